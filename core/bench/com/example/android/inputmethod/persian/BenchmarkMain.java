@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the benchmarks of the core with the GC profiler on, so that each
+ * result has the bytes allocated per operation as well as the time, and
+ * writes them as JSON for comparing against an earlier run.
+ *
+ * These sources need the JMH core and annotation processor jars, and core/src,
+ * on the class path; they are not part of the Eclipse build, but "gradle
+ * :core:jmh" runs them with the same settings.  The arguments are the file
+ * to write the results to (by default jmh-result.json) and an optional
+ * regular expression for the benchmarks to run.
+ */
+public class BenchmarkMain {
+
+    // The seed for the synthetic word lists, and the number of words in the
+    // dictionary for the guessing and learning benchmarks (about as many as
+    // in R.raw.persianwords).
+    static final long SEED = 2901;
+    static final int DICTIONARY_SIZE = 80000;
+
+    public static void main(String[] args) throws RunnerException {
+        String resultFile = (args.length > 0) ? args[0] : "jmh-result.json";
+        String include = (args.length > 1) ? args[1] : BenchmarkMain.class.getPackage().getName() + ".*Benchmark";
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .warmupIterations(5)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(10)
+                .measurementTime(TimeValue.seconds(1))
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The time for one guess, by the length of the query.  Each call takes the
+ * next of many queries, more than the guesser caches, so that most are
+ * searched.  Queries of one and two letters are only worked out (from the
+ * tables packed with the word list) the first time, and then kept, as they
+ * are when typing, so guess() times looking them up; guessCold() drops
+ * every kept guess first, to time working them out.  The variant-heavy
+ * queries have two or more alefs, vavs or yehs, each of which the search
+ * also follows as its hamza and madda forms.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GuessBenchmark {
+
+    // Many more than PersianWordGuesser.MAX_CACHED_QUERIES.
+    private static final int QUERY_COUNT = 1024;
+
+    @Param({ "1", "2", "4", "8" })
+    public int prefixLength;
+
+    @Param({ "false", "true" })
+    public boolean variantHeavy;
+
+    @Param({ "false", "true" })
+    public boolean useSuccinctTries;
+
+    private PersianWordGuesser mGuesser;
+    private String[] mQueries;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        SyntheticWordList wordList = new SyntheticWordList(BenchmarkMain.DICTIONARY_SIZE, BenchmarkMain.SEED);
+        PersianWordGuesser.unloadDictionary();
+        mGuesser = new PersianWordGuesser(wordList, new MemoryWordStore());
+        mGuesser.setUseSuccinctTries(useSuccinctTries);
+        mQueries = wordList.getPrefixes(QUERY_COUNT, prefixLength, variantHeavy, BenchmarkMain.SEED);
+        // Build every shard first, so that only the searches are timed.
+        for (int i = 0; i < mQueries.length; i++) {
+            mGuesser.guess(mQueries[i]);
+        }
+        mGuesser.clearCache();
+    }
+
+    @Benchmark
+    public ArrayList<String> guess() {
+        String query = mQueries[mNext];
+        mNext = (mNext + 1) % mQueries.length;
+        return mGuesser.guess(query);
+    }
+
+    @Benchmark
+    public ArrayList<String> guessCold() {
+        String query = mQueries[mNext];
+        mNext = (mNext + 1) % mQueries.length;
+        mGuesser.releaseCaches();
+        return mGuesser.guess(query);
+    }
+}
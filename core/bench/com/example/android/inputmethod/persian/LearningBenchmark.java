@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of learning, by how many words the user has already taught the
+ * guesser: selecting a word again, selecting a new one, and saving them
+ * all.  Each selection is followed by a guess for the start of the word,
+ * which has to find it with its new rank.
+ *
+ * The guesser is rebuilt with the learned words before each iteration, so
+ * the words selectNewWord adds do not pile up.  It times a batch of
+ * NEW_WORDS_PER_ITERATION selections in each iteration, which is few
+ * beside the words already learned.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LearningBenchmark {
+
+    // The new words selected in each iteration of selectNewWord, and the
+    // length of the guess after a selection.
+    private static final int NEW_WORDS_PER_ITERATION = 50;
+    private static final int GUESS_LENGTH = 3;
+
+    @Param({ "1000", "10000", "100000" })
+    public int learnedWords;
+
+    private SyntheticWordList mWordList;
+    private PersianWordGuesser mGuesser;
+    private List<String> mLearned;
+    private List<String> mNewWords;
+    private int mNextLearned;
+    private int mNextNew;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mWordList = new SyntheticWordList(BenchmarkMain.DICTIONARY_SIZE, BenchmarkMain.SEED);
+        // The words after the learned ones are new to the guesser.
+        List<String> words = mWordList.getNewWords(learnedWords + 1000, BenchmarkMain.SEED);
+        mLearned = new ArrayList<String>(words.subList(0, learnedWords));
+        mNewWords = new ArrayList<String>(words.subList(learnedWords, words.size()));
+    }
+
+    @Setup(Level.Iteration)
+    public void learn() {
+        PersianWordGuesser.unloadDictionary();
+        mGuesser = new PersianWordGuesser(mWordList, new MemoryWordStore());
+        for (int i = 0; i < mLearned.size(); i++) {
+            mGuesser.selectWord(mLearned.get(i));
+        }
+        // Build every shard first, so that only the learning is timed.
+        for (int i = 0; i < mNewWords.size(); i++) {
+            mGuesser.guess(mNewWords.get(i).substring(0, GUESS_LENGTH));
+        }
+        mGuesser.clearCache();
+    }
+
+    /**
+     * Select a word the user has selected before, oldest first.
+     */
+    @Benchmark
+    public ArrayList<String> selectLearnedWord() {
+        String word = mLearned.get(mNextLearned);
+        mNextLearned = (mNextLearned + 1) % mLearned.size();
+        mGuesser.selectWord(word);
+        return mGuesser.guess(word.substring(0, GUESS_LENGTH));
+    }
+
+    /**
+     * Select a word the guesser has not seen.  The score is the time for
+     * the whole batch.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(batchSize = NEW_WORDS_PER_ITERATION)
+    @Measurement(batchSize = NEW_WORDS_PER_ITERATION)
+    public ArrayList<String> selectNewWord() {
+        String word = mNewWords.get(mNextNew);
+        mNextNew = (mNextNew + 1) % mNewWords.size();
+        mGuesser.selectWord(word);
+        return mGuesser.guess(word.substring(0, GUESS_LENGTH));
+    }
+
+    @Benchmark
+    public void saveState() {
+        mGuesser.saveState();
+    }
+}
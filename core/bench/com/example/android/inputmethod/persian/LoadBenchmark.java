@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * How long the guesser takes to start from nothing: reading and indexing
+ * the word list, and then building the trie for the first shard used.  The
+ * word list is read either as the raw list of words, which is packed as it
+ * is read, or as the packed file the keyboard ships (see DictionaryPacker).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoadBenchmark {
+
+    @Param({ "20000", "80000" })
+    public int dictionarySize;
+
+    /**
+     * The kind of shard trie, which only matters once a guess is made.
+     */
+    @State(Scope.Benchmark)
+    public static class TrieKind {
+        @Param({ "false", "true" })
+        public boolean useSuccinctTries;
+    }
+
+    private SyntheticWordList mWordList;
+    private WordListSource mPackedWordList;
+    private String mFirstQuery;
+
+    @Setup
+    public void setUp() {
+        mWordList = new SyntheticWordList(dictionarySize, BenchmarkMain.SEED);
+        mPackedWordList = mWordList.getPackedSource();
+        mFirstQuery = mWordList.getPrefixes(1, 3, false, BenchmarkMain.SEED)[0];
+    }
+
+    @Benchmark
+    public PersianWordGuesser construct() {
+        PersianWordGuesser.unloadDictionary();
+        return new PersianWordGuesser(mWordList, new MemoryWordStore());
+    }
+
+    @Benchmark
+    public Object constructAndGuess(TrieKind trieKind) {
+        PersianWordGuesser.unloadDictionary();
+        PersianWordGuesser guesser = new PersianWordGuesser(mWordList, new MemoryWordStore());
+        guesser.setUseSuccinctTries(trieKind.useSuccinctTries);
+        return guesser.guess(mFirstQuery);
+    }
+
+    @Benchmark
+    public PersianWordGuesser constructPacked() {
+        PersianWordGuesser.unloadDictionary();
+        return new PersianWordGuesser(mPackedWordList, new MemoryWordStore());
+    }
+
+    @Benchmark
+    public Object constructPackedAndGuess(TrieKind trieKind) {
+        PersianWordGuesser.unloadDictionary();
+        PersianWordGuesser guesser = new PersianWordGuesser(mPackedWordList, new MemoryWordStore());
+        guesser.setUseSuccinctTries(trieKind.useSuccinctTries);
+        return guesser.guess(mFirstQuery);
+    }
+}
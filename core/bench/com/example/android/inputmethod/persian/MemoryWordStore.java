@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the selected words in memory, for the benchmarks.  They are joined
+ * into one string as PreferencesWordStore does, so that saving costs about
+ * the same.
+ */
+class MemoryWordStore implements SelectedWordStore {
+
+    private String mSelectedWordsBundle = "";
+
+    public List<String> load() {
+        if (mSelectedWordsBundle.length() == 0) {
+            return new ArrayList<String>();
+        }
+        return Arrays.asList(mSelectedWordsBundle.split("\\n"));
+    }
+
+    public void save(List<String> words) {
+        StringBuilder selectedWordsBuilder = new StringBuilder();
+        for (String word : words) {
+            selectedWordsBuilder.append(word);
+            selectedWordsBuilder.append('\n');
+        }
+        mSelectedWordsBundle = selectedWordsBuilder.toString();
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A made-up dictionary for the benchmarks, so that they do not depend on the
+ * real word list.  The words are random strings of Persian letters, with the
+ * vowel letters common and their hamza and madda forms mixed in, so that
+ * queries typed without the diacritics have to follow the variants.  The
+ * same seed always gives the same words.
+ */
+class SyntheticWordList implements WordListSource {
+
+    // Letters, weighted by how often they appear: alef, vav and yeh are
+    // listed more than once.
+    private static final String LETTERS =
+            "\u0627\u0627\u0627\u0628\u067E\u062A\u062C\u0686\u062E\u062F"
+            + "\u0631\u0632\u0633\u0634\u0639\u0641\u0642\u06A9\u06AF\u0644"
+            + "\u0645\u0646\u0648\u0648\u0647\u06CC\u06CC\u06CC";
+    // The hamza and madda forms of alef, vav and yeh.
+    private static final String VARIANTS = "\u0622\u0623\u0625\u0624\u0626";
+    // One in this many letters is a variant.
+    private static final int VARIANT_ODDS = 8;
+
+    private static final int MIN_WORD_LENGTH = 2;
+    private static final int MAX_WORD_LENGTH = 10;
+
+    private final List<String> mWords;
+    private final byte[] mBytes;
+
+    /**
+     * Make count distinct words, most common last.
+     */
+    SyntheticWordList(int count, long seed) {
+        Random random = new Random(seed);
+        HashSet<String> seen = new HashSet<String>();
+        mWords = new ArrayList<String>(count);
+        while (mWords.size() < count) {
+            String word = randomWord(random, MIN_WORD_LENGTH, MAX_WORD_LENGTH);
+            if (seen.add(word)) {
+                mWords.add(word);
+            }
+        }
+
+        // The format read by PersianWordGuesser.readWordList.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            for (int i = 0; i < mWords.size(); i++) {
+                out.writeUTF(mWords.get(i));
+            }
+            out.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        mBytes = bytes.toByteArray();
+    }
+
+    public InputStream open() {
+        return new ByteArrayInputStream(mBytes);
+    }
+
+    /**
+     * Returns the same words in the packed file format, as DictionaryPacker
+     * writes them.
+     */
+    WordListSource getPackedSource() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            PackedWordList wordList = PersianWordGuesser.readWordList(new DataInputStream(open()));
+            DataOutputStream out = new DataOutputStream(bytes);
+            wordList.writeTo(out);
+            out.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        final byte[] packedBytes = bytes.toByteArray();
+        return new WordListSource() {
+            public InputStream open() {
+                return new ByteArrayInputStream(packedBytes);
+            }
+        };
+    }
+
+    List<String> getWords() {
+        return mWords;
+    }
+
+    /**
+     * Returns count queries of the given length, each the start of a word in
+     * the list, typed without diacritics.  If variantHeavy is set, only those
+     * which have at least two alefs, vavs or yehs are chosen.
+     */
+    String[] getPrefixes(int count, int length, boolean variantHeavy, long seed) {
+        Random random = new Random(seed);
+        String[] prefixes = new String[count];
+        int found = 0;
+        while (found < count) {
+            String word = mWords.get(random.nextInt(mWords.size()));
+            if (word.length() < length) {
+                continue;
+            }
+            String prefix = fold(word.substring(0, length));
+            if (variantHeavy && countVowelLetters(prefix) < Math.min(2, length)) {
+                continue;
+            }
+            prefixes[found++] = prefix;
+        }
+        return prefixes;
+    }
+
+    /**
+     * Returns count new words, which are not in the list.
+     */
+    List<String> getNewWords(int count, long seed) {
+        Random random = new Random(seed);
+        HashSet<String> seen = new HashSet<String>(mWords);
+        List<String> words = new ArrayList<String>(count);
+        while (words.size() < count) {
+            // Longer than the words in the list, so that few collide.
+            String word = randomWord(random, MAX_WORD_LENGTH - 2, MAX_WORD_LENGTH + 4);
+            if (seen.add(word)) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static String randomWord(Random random, int minLength, int maxLength) {
+        final int length = minLength + random.nextInt(maxLength - minLength + 1);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            char c = LETTERS.charAt(random.nextInt(LETTERS.length()));
+            if (random.nextInt(VARIANT_ODDS) == 0) {
+                c = VARIANTS.charAt(random.nextInt(VARIANTS.length()));
+            }
+            word.append(c);
+        }
+        return word.toString();
+    }
+
+    private static String fold(String s) {
+        StringBuilder folded = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            folded.append(PersianCharClass.indexToChar(PersianCharClass.getFoldIndex(s.charAt(i))));
+        }
+        return folded.toString();
+    }
+
+    private static int countVowelLetters(String s) {
+        int count = 0;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '\u0627' || c == '\u0648' || c == '\u06CC') { // alef, vav, yeh
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Packs the raw word list, a sequence of words written with writeUTF, most
+ * common last, into the format of PackedWordList, so that the keyboard reads
+ * the words already sorted, packed and with the tables of the short queries,
+ * rather than building all of them every time it starts.  The build runs it
+ * with the raw list and the file to write as its arguments.
+ */
+final class DictionaryPacker {
+
+    private DictionaryPacker() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: DictionaryPacker <raw word list> <packed dictionary>");
+            System.exit(1);
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0])));
+        PackedWordList wordList;
+        try {
+            wordList = PersianWordGuesser.readWordList(in);
+        } finally {
+            in.close();
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[1])));
+        try {
+            wordList.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+}
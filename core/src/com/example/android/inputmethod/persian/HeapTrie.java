@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+/**
+ * A trie of ranked words on the Java heap, which a word can be added to in
+ * time proportional to its length.  It holds the words the user selects,
+ * which arrive one at a time and may number in the tens of thousands, so
+ * rebuilding a PackedTrie for each of them would be too slow.
+ *
+ * The nodes are kept in parallel int arrays, indexed by node, rather than as
+ * objects.  The children of a node are a linked list in order of trie
+ * index, through mFirstChild and mNextSibling.  Node handles stay valid as
+ * words are added.
+ */
+final class HeapTrie implements TrieIndex {
+    private static final int ROOT = 0;
+    private static final int INITIAL_CAPACITY = 64;
+    // The rank of a node which is not terminal.
+    private static final int NO_RANK = -1;
+
+    private int mNodeCount;
+    private byte[] mIndices;
+    private int[] mRanks;
+    private int[] mWeights;
+    private int[] mChildCounts;
+    private int[] mFirstChild;
+    private int[] mNextSibling;
+
+    // The last child visited by getChildIndex or getChildAt, so that walking
+    // the children in order does not start from the first one each time.
+    private int mCursorParent = NO_NODE;
+    private int mCursorPosition;
+    private int mCursorChild;
+
+    HeapTrie() {
+        mIndices = new byte[INITIAL_CAPACITY];
+        mRanks = new int[INITIAL_CAPACITY];
+        mWeights = new int[INITIAL_CAPACITY];
+        mChildCounts = new int[INITIAL_CAPACITY];
+        mFirstChild = new int[INITIAL_CAPACITY];
+        mNextSibling = new int[INITIAL_CAPACITY];
+        newNode(0);
+    }
+
+    /**
+     * Add the word, or give it the new rank if it is already in the trie.
+     * Words with characters that cannot be in the trie are left out.
+     */
+    void put(String word, int rank) {
+        if (!PackedWordList.isValidWord(word)) {
+            return;
+        }
+        int node = ROOT;
+        for (int i = 0; i < word.length(); i++) {
+            node = getOrAddChild(node, PersianCharClass.getTrieIndex(word.charAt(i)));
+        }
+        if (mRanks[node] == NO_RANK) {
+            // A new word: every node on its path has one more below it.
+            node = ROOT;
+            mWeights[node]++;
+            for (int i = 0; i < word.length(); i++) {
+                node = getChild(node, PersianCharClass.getTrieIndex(word.charAt(i)));
+                mWeights[node]++;
+            }
+        }
+        mRanks[node] = rank;
+    }
+
+    public int getRoot() {
+        return ROOT;
+    }
+
+    public boolean isTerminal(int node) {
+        return mRanks[node] != NO_RANK;
+    }
+
+    public int getRank(int node) {
+        return mRanks[node];
+    }
+
+    public int getWeight(int node) {
+        return mWeights[node];
+    }
+
+    public int getChildCount(int node) {
+        return mChildCounts[node];
+    }
+
+    public int getChildIndex(int node, int i) {
+        return mIndices[findChildAt(node, i)];
+    }
+
+    public int getChildAt(int node, int i) {
+        return findChildAt(node, i);
+    }
+
+    public int getChild(int node, int index) {
+        for (int child = mFirstChild[node]; child != NO_NODE; child = mNextSibling[child]) {
+            if (mIndices[child] >= index) {
+                return (mIndices[child] == index) ? child : NO_NODE;
+            }
+        }
+        return NO_NODE;
+    }
+
+    public int find(CharSequence s) {
+        int node = ROOT;
+        for (int i = 0; node != NO_NODE && i < s.length(); i++) {
+            final int index = PersianCharClass.getTrieIndex(s.charAt(i));
+            if (index == -1) {
+                return NO_NODE;
+            }
+            node = getChild(node, index);
+        }
+        return node;
+    }
+
+    private int findChildAt(int node, int i) {
+        int position = 0;
+        int child = mFirstChild[node];
+        if (node == mCursorParent && i >= mCursorPosition) {
+            position = mCursorPosition;
+            child = mCursorChild;
+        }
+        for (; position < i; position++) {
+            child = mNextSibling[child];
+        }
+        mCursorParent = node;
+        mCursorPosition = i;
+        mCursorChild = child;
+        return child;
+    }
+
+    private int getOrAddChild(int node, int index) {
+        int previous = NO_NODE;
+        int child = mFirstChild[node];
+        while (child != NO_NODE && mIndices[child] < index) {
+            previous = child;
+            child = mNextSibling[child];
+        }
+        if (child != NO_NODE && mIndices[child] == index) {
+            return child;
+        }
+
+        final int added = newNode(index);
+        mNextSibling[added] = child;
+        if (previous == NO_NODE) {
+            mFirstChild[node] = added;
+        } else {
+            mNextSibling[previous] = added;
+        }
+        mChildCounts[node]++;
+        // The positions of the children after it have changed.
+        mCursorParent = NO_NODE;
+        return added;
+    }
+
+    private int newNode(int index) {
+        if (mNodeCount == mRanks.length) {
+            grow(mNodeCount * 2);
+        }
+        final int node = mNodeCount++;
+        mIndices[node] = (byte) index;
+        mRanks[node] = NO_RANK;
+        mWeights[node] = 0;
+        mChildCounts[node] = 0;
+        mFirstChild[node] = NO_NODE;
+        mNextSibling[node] = NO_NODE;
+        return node;
+    }
+
+    private void grow(int capacity) {
+        byte[] indices = new byte[capacity];
+        System.arraycopy(mIndices, 0, indices, 0, mNodeCount);
+        mIndices = indices;
+        mRanks = copyOf(mRanks, capacity, mNodeCount);
+        mWeights = copyOf(mWeights, capacity, mNodeCount);
+        mChildCounts = copyOf(mChildCounts, capacity, mNodeCount);
+        mFirstChild = copyOf(mFirstChild, capacity, mNodeCount);
+        mNextSibling = copyOf(mNextSibling, capacity, mNodeCount);
+    }
+
+    private static int[] copyOf(int[] array, int capacity, int length) {
+        int[] copy = new int[capacity];
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+}
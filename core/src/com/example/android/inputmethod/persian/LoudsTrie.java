@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A succinct trie of ranked words, in the level-order unary degree sequence
+ * (LOUDS) encoding.  The nodes are numbered in breadth-first order, with the
+ * root as 0, and a node is referred to by its number.
+ *
+ * The shape of the trie is a bit vector: "10", then for each node in order,
+ * a 1 for each child followed by a 0, then a final 0.  The children of node
+ * i follow the (i+1)-th 0, and the node for the 1 at position p is the
+ * number of 1s before p.  With a count of 1s kept per 64-bit word, and the
+ * word holding every 64th 0 noted, finding the children of a node takes
+ * constant time.  No count of words is stored per node, so getWeight counts
+ * the words below a node level by level, with a rank and a select for each
+ * level of the subtree; it is not constant time.
+ *
+ * The trie index of the character leading to each node is stored in 6 bits,
+ * whether each node ends a word in 1 bit, and the ranks of the words (in
+ * node order) in as few bits as the largest rank needs, which is 8 for
+ * quantized ranks.  That is about 9 bits per node, plus the ranks.
+ */
+final class LoudsTrie implements TrieIndex {
+    private static final int LABEL_BITS = 6;
+    private static final int ZERO_SAMPLE_RATE = 64;
+
+    // The shape, with the number of 1s before each word.
+    private final long[] mShape;
+    private final int[] mShapeRanks;
+    // The word which holds every ZERO_SAMPLE_RATE-th 0, starting with the first.
+    private final int[] mZeroSamples;
+
+    private final long[] mLabels;
+    private final long[] mTerminals;
+    private final int[] mTerminalRanks;
+    private final long[] mRanks;
+    private final int mRankBits;
+
+    private LoudsTrie(long[] shape, int shapeBits, long[] labels, long[] terminals, long[] ranks, int rankBits) {
+        mShape = shape;
+        mShapeRanks = countOnes(shape);
+        mLabels = labels;
+        mTerminals = terminals;
+        mTerminalRanks = countOnes(terminals);
+        mRanks = ranks;
+        mRankBits = rankBits;
+
+        // Note where every ZERO_SAMPLE_RATE-th 0 is.
+        final int zeros = shapeBits - (mShapeRanks[mShapeRanks.length - 1]
+                + Long.bitCount(shape[shape.length - 1]));
+        mZeroSamples = new int[(zeros + ZERO_SAMPLE_RATE - 1) / ZERO_SAMPLE_RATE];
+        int zerosBefore = 0;
+        int sample = 0;
+        for (int word = 0; word < shape.length && sample < mZeroSamples.length; word++) {
+            final int zerosInWord = Math.min(64, shapeBits - word * 64) - Long.bitCount(shape[word]);
+            while (sample < mZeroSamples.length && sample * ZERO_SAMPLE_RATE < zerosBefore + zerosInWord) {
+                mZeroSamples[sample++] = word;
+            }
+            zerosBefore += zerosInWord;
+        }
+    }
+
+    // Returns the number of 1s before each word.
+    private static int[] countOnes(long[] bits) {
+        int[] counts = new int[bits.length];
+        int count = 0;
+        for (int i = 0; i < bits.length; i++) {
+            counts[i] = count;
+            count += Long.bitCount(bits[i]);
+        }
+        return counts;
+    }
+
+    private static boolean getBit(long[] bits, int position) {
+        return (bits[position >> 6] & (1L << (position & 63))) != 0;
+    }
+
+    // The number of 1s before the position.
+    private static int rank1(long[] bits, int[] ranks, int position) {
+        final int word = position >> 6;
+        final int offset = position & 63;
+        if (word == bits.length) {
+            return ranks[word - 1] + Long.bitCount(bits[word - 1]);
+        }
+        return ranks[word] + (offset == 0 ? 0 : Long.bitCount(bits[word] & (-1L >>> (64 - offset))));
+    }
+
+    // The position of the k-th 0 (counting from 1) in the shape.
+    private int select0(int k) {
+        int word = mZeroSamples[(k - 1) / ZERO_SAMPLE_RATE];
+        int zerosBefore = word * 64 - mShapeRanks[word];
+        while (zerosBefore + 64 - Long.bitCount(mShape[word]) < k) {
+            zerosBefore += 64 - Long.bitCount(mShape[word]);
+            word++;
+        }
+        long zeros = ~mShape[word];
+        for (int i = k - zerosBefore; i > 1; i--) {
+            zeros &= zeros - 1;
+        }
+        return word * 64 + Long.numberOfTrailingZeros(zeros);
+    }
+
+    private static long getBits(long[] bits, int position, int count) {
+        final int word = position >> 6;
+        final int offset = position & 63;
+        long value = bits[word] >>> offset;
+        if (offset + count > 64) {
+            value |= bits[word + 1] << (64 - offset);
+        }
+        return value & ((1L << count) - 1);
+    }
+
+    public int getRoot() {
+        return 0;
+    }
+
+    public boolean isTerminal(int node) {
+        return getBit(mTerminals, node);
+    }
+
+    public int getRank(int node) {
+        final int word = rank1(mTerminals, mTerminalRanks, node);
+        return (int) getBits(mRanks, word * mRankBits, mRankBits);
+    }
+
+    public int getWeight(int node) {
+        // The descendants of a node at each level are consecutive, so count
+        // the words one level at a time.  This takes time proportional to
+        // the height of the subtree.
+        int weight = 0;
+        int first = node;
+        int last = node;
+        while (first <= last) {
+            weight += rank1(mTerminals, mTerminalRanks, last + 1) - rank1(mTerminals, mTerminalRanks, first);
+            final int nextFirst = getFirstChild(first);
+            final int nextLast = getFirstChild(last + 1) - 1;
+            first = nextFirst;
+            last = nextLast;
+        }
+        return weight;
+    }
+
+    // The number of the first child of the node, or of the next node's first
+    // child if it has none.
+    private int getFirstChild(int node) {
+        return rank1(mShape, mShapeRanks, select0(node + 1) + 1);
+    }
+
+    public int getChildCount(int node) {
+        final int start = select0(node + 1) + 1;
+        int end = start;
+        while (getBit(mShape, end)) {
+            end++;
+        }
+        return end - start;
+    }
+
+    public int getChildIndex(int node, int i) {
+        return getLabel(getFirstChild(node) + i);
+    }
+
+    public int getChildAt(int node, int i) {
+        return getFirstChild(node) + i;
+    }
+
+    public int getChild(int node, int index) {
+        final int start = select0(node + 1) + 1;
+        final int end = select0(node + 2);
+        final int firstChild = rank1(mShape, mShapeRanks, start);
+        int low = 0;
+        int high = end - start - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int midIndex = getLabel(firstChild + mid);
+            if (midIndex < index) {
+                low = mid + 1;
+            } else if (midIndex > index) {
+                high = mid - 1;
+            } else {
+                return firstChild + mid;
+            }
+        }
+        return NO_NODE;
+    }
+
+    public int find(CharSequence s) {
+        int node = 0;
+        for (int i = 0; node != NO_NODE && i < s.length(); i++) {
+            final int index = PersianCharClass.getTrieIndex(s.charAt(i));
+            if (index == -1) {
+                return NO_NODE;
+            }
+            node = getChild(node, index);
+        }
+        return node;
+    }
+
+    private int getLabel(int node) {
+        return (int) getBits(mLabels, node * LABEL_BITS, LABEL_BITS);
+    }
+
+    /**
+     * Build a trie from the first count words and their ranks, which must
+     * not be negative.  Words with characters that cannot be in the trie are
+     * left out, and a word which appears more than once keeps its highest
+     * rank.
+     */
+    static LoudsTrie build(String[] words, int[] ranks, int count) {
+        // Keep the valid words, and sort them into trie order.
+        Integer[] order = new Integer[count];
+        int validCount = 0;
+        int maxRank = 0;
+        for (int i = 0; i < count; i++) {
+            if (PackedWordList.isValidWord(words[i])) {
+                order[validCount++] = Integer.valueOf(i);
+                maxRank = Math.max(maxRank, ranks[i]);
+            }
+        }
+        final String[] unsortedWords = words;
+        Arrays.sort(order, 0, validCount, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return PackedWordList.compareWords(unsortedWords[a.intValue()], unsortedWords[b.intValue()]);
+            }
+        });
+        String[] sortedWords = new String[validCount];
+        int[] sortedRanks = new int[validCount];
+        for (int i = 0; i < validCount; i++) {
+            sortedWords[i] = words[order[i].intValue()];
+            sortedRanks[i] = ranks[order[i].intValue()];
+        }
+        final int rankBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxRank));
+
+        // Visit the nodes breadth first.  A node is the range of words which
+        // share its prefix, and its depth.
+        BitWriter shape = new BitWriter();
+        BitWriter labels = new BitWriter();
+        BitWriter terminals = new BitWriter();
+        BitWriter rankBuffer = new BitWriter();
+        int[] queue = new int[3 * 64];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+        queue[tail++] = validCount;
+        queue[tail++] = 0;
+        shape.write(1, 1);
+        shape.write(0, 1);
+        labels.write(0, LABEL_BITS);
+        while (head < tail) {
+            int low = queue[head++];
+            final int high = queue[head++];
+            final int depth = queue[head++];
+
+            // Words which end here sort first.
+            boolean isTerminal = false;
+            int rank = 0;
+            while (low < high && sortedWords[low].length() == depth) {
+                isTerminal = true;
+                rank = Math.max(rank, sortedRanks[low]);
+                low++;
+            }
+            terminals.write(isTerminal ? 1 : 0, 1);
+            if (isTerminal) {
+                rankBuffer.write(rank, rankBits);
+            }
+
+            int start = low;
+            while (start < high) {
+                final int index = PersianCharClass.getTrieIndex(sortedWords[start].charAt(depth));
+                int end = start + 1;
+                while (end < high && PersianCharClass.getTrieIndex(sortedWords[end].charAt(depth)) == index) {
+                    end++;
+                }
+                shape.write(1, 1);
+                labels.write(index, LABEL_BITS);
+                if (tail + 3 > queue.length) {
+                    // Reclaim the space before the head, or grow.
+                    int[] newQueue = new int[Math.max(queue.length, 2 * (tail - head + 3))];
+                    System.arraycopy(queue, head, newQueue, 0, tail - head);
+                    tail -= head;
+                    head = 0;
+                    queue = newQueue;
+                }
+                queue[tail++] = start;
+                queue[tail++] = end;
+                queue[tail++] = depth + 1;
+                start = end;
+            }
+            shape.write(0, 1);
+        }
+        // A last 0, so that the children of the last node end somewhere.
+        shape.write(0, 1);
+
+        return new LoudsTrie(shape.toLongArray(), shape.mBitCount, labels.toLongArray(),
+                terminals.toLongArray(), rankBuffer.toLongArray(), rankBits);
+    }
+
+    private static class BitWriter {
+        long[] mWords = new long[16];
+        int mBitCount;
+
+        void write(long value, int count) {
+            for (int i = 0; i < count; i++) {
+                final int word = mBitCount >> 6;
+                if (word == mWords.length) {
+                    long[] words = new long[mWords.length * 2];
+                    System.arraycopy(mWords, 0, words, 0, mWords.length);
+                    mWords = words;
+                }
+                if (((value >>> i) & 1) != 0) {
+                    mWords[word] |= 1L << (mBitCount & 63);
+                }
+                mBitCount++;
+            }
+        }
+
+        long[] toLongArray() {
+            // Keep a spare word, so that reads never run off the end.
+            long[] words = new long[(mBitCount >> 6) + 1];
+            System.arraycopy(mWords, 0, words, 0, Math.min(words.length, mWords.length));
+            return words;
+        }
+    }
+}
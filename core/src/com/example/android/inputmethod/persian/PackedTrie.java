@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A trie of ranked words, packed into a single ByteBuffer.  A node is
+ * referred to by its offset in the buffer, and its fields are decoded
+ * when they are read, so there is one object per trie rather than one per
+ * node.  With a direct buffer, the trie is not on the Java heap at all.
+ *
+ * Each node is laid out as:
+ *   byte    flags (FLAG_TERMINAL) and number of children
+ *   int     weight, the number of words in the subtree
+ *   byte or int  rank, only if the node is terminal; a byte if every
+ *           rank in the trie fits in one (e.g., quantized ranks)
+ *   then, for each child in order of trie index:
+ *   byte    trie index of the child's character
+ *   int     offset of the child
+ * Children are written before their parent, so the root comes last.
+ */
+final class PackedTrie implements TrieIndex {
+    private static final int FLAG_TERMINAL = 0x80;
+    private static final int CHILD_COUNT_MASK = 0x3F;
+    private static final int HEADER_SIZE = 5;
+    private static final int MAX_BYTE_RANK = 0xFF;
+    private static final int CHILD_SIZE = 5;
+
+    private final ByteBuffer mBuffer;
+    private final int mRoot;
+    private final int mRankSize;
+
+    private PackedTrie(ByteBuffer buffer, int root, int rankSize) {
+        mBuffer = buffer;
+        mRoot = root;
+        mRankSize = rankSize;
+    }
+
+    public int getRoot() {
+        return mRoot;
+    }
+
+    public boolean isTerminal(int node) {
+        return (mBuffer.get(node) & FLAG_TERMINAL) != 0;
+    }
+
+    public int getWeight(int node) {
+        return mBuffer.getInt(node + 1);
+    }
+
+    public int getRank(int node) {
+        if (mRankSize == 1) {
+            return mBuffer.get(node + HEADER_SIZE) & 0xFF;
+        }
+        return mBuffer.getInt(node + HEADER_SIZE);
+    }
+
+    public int getChildCount(int node) {
+        return mBuffer.get(node) & CHILD_COUNT_MASK;
+    }
+
+    public int getChildIndex(int node, int i) {
+        return mBuffer.get(getChildTable(node) + i * CHILD_SIZE);
+    }
+
+    public int getChildAt(int node, int i) {
+        return mBuffer.getInt(getChildTable(node) + i * CHILD_SIZE + 1);
+    }
+
+    public int getChild(int node, int index) {
+        final int table = getChildTable(node);
+        int low = 0;
+        int high = getChildCount(node) - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int midIndex = mBuffer.get(table + mid * CHILD_SIZE);
+            if (midIndex < index) {
+                low = mid + 1;
+            } else if (midIndex > index) {
+                high = mid - 1;
+            } else {
+                return mBuffer.getInt(table + mid * CHILD_SIZE + 1);
+            }
+        }
+        return NO_NODE;
+    }
+
+    public int find(CharSequence s) {
+        int node = mRoot;
+        for (int i = 0; node != NO_NODE && i < s.length(); i++) {
+            final int index = PersianCharClass.getTrieIndex(s.charAt(i));
+            if (index == -1) {
+                return NO_NODE;
+            }
+            node = getChild(node, index);
+        }
+        return node;
+    }
+
+    private int getChildTable(int node) {
+        return node + HEADER_SIZE + (isTerminal(node) ? mRankSize : 0);
+    }
+
+    /**
+     * Build a trie from the first count words and their ranks, which must
+     * not be negative.  Words with characters that cannot be in the trie are
+     * left out, and a word which appears more than once keeps its highest
+     * rank.
+     */
+    static PackedTrie build(String[] words, int[] ranks, int count, boolean direct) {
+        // Keep the valid words, and sort them into trie order.
+        Integer[] order = new Integer[count];
+        int validCount = 0;
+        int maxLength = 0;
+        int maxRank = 0;
+        for (int i = 0; i < count; i++) {
+            if (PackedWordList.isValidWord(words[i])) {
+                order[validCount++] = Integer.valueOf(i);
+                maxLength = Math.max(maxLength, words[i].length());
+                maxRank = Math.max(maxRank, ranks[i]);
+            }
+        }
+        final String[] unsortedWords = words;
+        Arrays.sort(order, 0, validCount, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return PackedWordList.compareWords(unsortedWords[a.intValue()], unsortedWords[b.intValue()]);
+            }
+        });
+        String[] sortedWords = new String[validCount];
+        int[] sortedRanks = new int[validCount];
+        for (int i = 0; i < validCount; i++) {
+            sortedWords[i] = words[order[i].intValue()];
+            sortedRanks[i] = ranks[order[i].intValue()];
+        }
+
+        // Measure, and then write.
+        final int rankSize = (maxRank <= MAX_BYTE_RANK) ? 1 : 4;
+        Builder builder = new Builder(sortedWords, sortedRanks, maxLength, rankSize);
+        builder.build(0, validCount, 0);
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(builder.mPosition)
+                : ByteBuffer.allocate(builder.mPosition);
+        builder.mBuffer = buffer;
+        builder.mPosition = 0;
+        int root = builder.build(0, validCount, 0);
+        return new PackedTrie(buffer, root, rankSize);
+    }
+
+    /**
+     * Writes the nodes for a range of sorted words, depth first.  Without a
+     * buffer, it only works out how much space they need.
+     */
+    private static class Builder {
+        final String[] mWords;
+        final int[] mRanks;
+        // The children of the node being written at each depth.
+        final int[] mChildIndices;
+        final int[] mChildNodes;
+        final int mRankSize;
+        ByteBuffer mBuffer;
+        int mPosition;
+
+        Builder(String[] words, int[] ranks, int maxLength, int rankSize) {
+            mWords = words;
+            mRanks = ranks;
+            mRankSize = rankSize;
+            mChildIndices = new int[(maxLength + 1) * PersianCharClass.NUM_VALID_CHARACTERS];
+            mChildNodes = new int[(maxLength + 1) * PersianCharClass.NUM_VALID_CHARACTERS];
+        }
+
+        /**
+         * Write the node for the words in [low, high), which all share their
+         * first depth characters, and return its offset.
+         */
+        int build(int low, int high, int depth) {
+            // Words which end here sort first.
+            boolean isTerminal = false;
+            int rank = -1;
+            while (low < high && mWords[low].length() == depth) {
+                isTerminal = true;
+                rank = Math.max(rank, mRanks[low]);
+                low++;
+            }
+
+            final int base = depth * PersianCharClass.NUM_VALID_CHARACTERS;
+            int childCount = 0;
+            int weight = isTerminal ? 1 : 0;
+            int start = low;
+            while (start < high) {
+                final int index = PersianCharClass.getTrieIndex(mWords[start].charAt(depth));
+                int end = start + 1;
+                while (end < high && PersianCharClass.getTrieIndex(mWords[end].charAt(depth)) == index) {
+                    end++;
+                }
+                final int child = build(start, end, depth + 1);
+                mChildIndices[base + childCount] = index;
+                mChildNodes[base + childCount] = child;
+                if (mBuffer != null) {
+                    weight += mBuffer.getInt(child + 1);
+                }
+                childCount++;
+                start = end;
+            }
+
+            final int node = mPosition;
+            mPosition += HEADER_SIZE + (isTerminal ? mRankSize : 0) + childCount * CHILD_SIZE;
+            if (mBuffer != null) {
+                mBuffer.put(node, (byte) ((isTerminal ? FLAG_TERMINAL : 0) | childCount));
+                mBuffer.putInt(node + 1, weight);
+                int table = node + HEADER_SIZE;
+                if (isTerminal) {
+                    if (mRankSize == 1) {
+                        mBuffer.put(table, (byte) rank);
+                    } else {
+                        mBuffer.putInt(table, rank);
+                    }
+                    table += mRankSize;
+                }
+                for (int i = 0; i < childCount; i++) {
+                    mBuffer.put(table + i * CHILD_SIZE, (byte) mChildIndices[base + i]);
+                    mBuffer.putInt(table + i * CHILD_SIZE + 1, mChildNodes[base + i]);
+                }
+            }
+            return node;
+        }
+    }
+}
@@ -0,0 +1,500 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A sorted list of ranked words, stored compactly.  Every character of a
+ * word is one of the NUM_VALID_CHARACTERS symbols, so it is stored as its
+ * 6-bit trie index.  The words are sorted in trie order and split into
+ * blocks; the first word of each block is stored whole, and each other word
+ * as the length of the prefix it shares with the word before it, followed by
+ * the rest of its characters.  A word is found by its id by decoding from
+ * the start of its block.
+ *
+ * Lengths are stored in 6-bit units, 5 bits at a time, with the top bit of a
+ * unit set if another unit follows.
+ *
+ * Ranks are stored in a byte per word, as buckets of the logarithm of the
+ * word's frequency (see quantizeRank).
+ *
+ * With the words are stored the ids of the best words for every query of one
+ * or two characters, in the order the guesser would find them, so that the
+ * shortest queries, which would search the largest subtrees, need no search,
+ * and a minimal perfect hash of the words (see WordHash), which finds the id
+ * of a word.
+ */
+final class PackedWordList {
+    // Identifies the packed form of the dictionary file.
+    static final int MAGIC = 0x50574C34; // "PWL4"
+
+    // The highest rank bucket.  Ranks are from 0 to MAX_RANK, higher is better.
+    static final int MAX_RANK = 255;
+
+    static final int BLOCK_SIZE = 16;
+
+    // The number of queries of one or two characters (see getShortPrefixKey).
+    static final int NUM_SHORT_PREFIXES = PersianCharClass.NUM_VALID_CHARACTERS
+            + PersianCharClass.NUM_VALID_CHARACTERS * PersianCharClass.NUM_VALID_CHARACTERS;
+
+    private static final int SYMBOL_BITS = 6;
+    private static final int SYMBOL_MASK = (1 << SYMBOL_BITS) - 1;
+    private static final int LENGTH_BITS = 5;
+    private static final int LENGTH_MASK = (1 << LENGTH_BITS) - 1;
+    private static final int LENGTH_CONTINUES = 1 << LENGTH_BITS;
+
+    private final int mCount;
+    private final byte[] mData;
+    // The bit offset of the first word of each block.
+    private final int[] mBlockOffsets;
+    private final byte[] mRanks;
+    // The ids of the best words for each short query, best first: those for
+    // the query with key k are from mShortPrefixStarts[k] up to
+    // mShortPrefixStarts[k + 1] in mShortPrefixIds.
+    private final int[] mShortPrefixStarts;
+    private final int[] mShortPrefixIds;
+    private final WordHash mWordHash;
+
+    private PackedWordList(int count, byte[] data, int[] blockOffsets, byte[] ranks,
+            int[] shortPrefixStarts, int[] shortPrefixIds, WordHash wordHash) {
+        mCount = count;
+        mData = data;
+        mBlockOffsets = blockOffsets;
+        mRanks = ranks;
+        mShortPrefixStarts = shortPrefixStarts;
+        mShortPrefixIds = shortPrefixIds;
+        mWordHash = wordHash;
+    }
+
+    int size() {
+        return mCount;
+    }
+
+    /**
+     * Returns the hash which finds the id of a word in the list.
+     */
+    WordHash getWordHash() {
+        return mWordHash;
+    }
+
+    int getRank(int id) {
+        return mRanks[id] & 0xFF;
+    }
+
+    /**
+     * Quantize a rank, out of rankCount ranks with the highest being the most
+     * common, into a bucket from 0 to MAX_RANK.  Word frequencies roughly
+     * follow Zipf's law, so the c-th most common word has a frequency in
+     * proportion to 1/c, and the buckets are equal steps of log(c).
+     */
+    static int quantizeRank(int rank, int rankCount) {
+        if (rankCount <= 1) {
+            return MAX_RANK;
+        }
+        final int position = Math.max(1, rankCount - rank);
+        return MAX_RANK - (int) (MAX_RANK * Math.log(position) / Math.log(rankCount));
+    }
+
+    String getWord(int id) {
+        StringBuilder word = new StringBuilder();
+        Reader reader = new Reader(id);
+        reader.next(word);
+        return word.toString();
+    }
+
+    /**
+     * Returns the id of the first word whose first character has a trie
+     * index of at least the given index.
+     */
+    int getFirstIdFrom(int index) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (PersianCharClass.getTrieIndex(getWord(mid).charAt(0)) < index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the key of a query of one or two characters, from 0 to
+     * NUM_SHORT_PREFIXES - 1, or -1 if it is longer or has a character which
+     * cannot be in the dictionary.
+     */
+    static int getShortPrefixKey(CharSequence prefix) {
+        if (prefix.length() == 0 || prefix.length() > 2) {
+            return -1;
+        }
+        final int first = PersianCharClass.getTrieIndex(prefix.charAt(0));
+        if (first == -1) {
+            return -1;
+        }
+        if (prefix.length() == 1) {
+            return first;
+        }
+        final int second = PersianCharClass.getTrieIndex(prefix.charAt(1));
+        if (second == -1) {
+            return -1;
+        }
+        return PersianCharClass.NUM_VALID_CHARACTERS * (first + 1) + second;
+    }
+
+    private static String getShortPrefix(int key) {
+        if (key < PersianCharClass.NUM_VALID_CHARACTERS) {
+            return String.valueOf(PersianCharClass.indexToChar(key));
+        }
+        final int first = key / PersianCharClass.NUM_VALID_CHARACTERS - 1;
+        final int second = key % PersianCharClass.NUM_VALID_CHARACTERS;
+        return new String(new char[] {
+            PersianCharClass.indexToChar(first), PersianCharClass.indexToChar(second) });
+    }
+
+    /**
+     * Returns the ids of the best words for a query of one or two
+     * characters, best first, or none if the query is not that short.
+     */
+    int[] getShortPrefixIds(CharSequence prefix) {
+        final int key = getShortPrefixKey(prefix);
+        if (key == -1) {
+            return new int[0];
+        }
+        int[] ids = new int[mShortPrefixStarts[key + 1] - mShortPrefixStarts[key]];
+        System.arraycopy(mShortPrefixIds, mShortPrefixStarts[key], ids, 0, ids.length);
+        return ids;
+    }
+
+    /**
+     * Decodes words in order, starting from a given id.
+     */
+    final class Reader {
+        private int mId;
+        private int mBitOffset;
+        private final StringBuilder mPrevious = new StringBuilder();
+
+        Reader(int id) {
+            // Skip to the word from the start of its block.
+            mId = id - id % BLOCK_SIZE;
+            mBitOffset = mId < mCount ? mBlockOffsets[mId / BLOCK_SIZE] : 0;
+            while (mId < id) {
+                next(null);
+            }
+        }
+
+        /**
+         * Append the next word to the given builder, if any.  Returns false
+         * if there are no more words.
+         */
+        boolean next(StringBuilder word) {
+            if (mId >= mCount) {
+                return false;
+            }
+            int prefixLength = 0;
+            if (mId % BLOCK_SIZE != 0) {
+                prefixLength = readLength();
+            }
+            final int suffixLength = readLength();
+            mPrevious.setLength(prefixLength);
+            for (int i = 0; i < suffixLength; i++) {
+                mPrevious.append(PersianCharClass.indexToChar(readBits(SYMBOL_BITS)));
+            }
+            mId++;
+            if (word != null) {
+                word.append(mPrevious);
+            }
+            return true;
+        }
+
+        private int readLength() {
+            int length = 0;
+            int shift = 0;
+            int unit;
+            do {
+                unit = readBits(SYMBOL_BITS);
+                length |= (unit & LENGTH_MASK) << shift;
+                shift += LENGTH_BITS;
+            } while ((unit & LENGTH_CONTINUES) != 0);
+            return length;
+        }
+
+        private int readBits(int count) {
+            // A symbol spans at most two bytes.
+            final int byteOffset = mBitOffset >> 3;
+            int bits = (mData[byteOffset] & 0xFF) << 8;
+            if (byteOffset + 1 < mData.length) {
+                bits |= mData[byteOffset + 1] & 0xFF;
+            }
+            final int value = (bits >> (16 - (mBitOffset & 7) - count)) & ((1 << count) - 1);
+            mBitOffset += count;
+            return value;
+        }
+    }
+
+    /**
+     * Pack the first count words and their ranks, which must not be
+     * negative.  Words with characters that cannot be in the dictionary are
+     * left out, and a word which appears more than once keeps its highest
+     * rank.  The ranks are quantized, the tables of the short queries are
+     * built by searching the packed words, and the words are hashed.
+     */
+    static PackedWordList build(String[] words, int[] ranks, int count) {
+        // Keep the valid words, and sort them into trie order.
+        Integer[] order = new Integer[count];
+        int validCount = 0;
+        int rankCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (isValidWord(words[i])) {
+                order[validCount++] = Integer.valueOf(i);
+                rankCount = Math.max(rankCount, ranks[i] + 1);
+            }
+        }
+        final String[] unsortedWords = words;
+        Arrays.sort(order, 0, validCount, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return compareWords(unsortedWords[a.intValue()], unsortedWords[b.intValue()]);
+            }
+        });
+
+        Writer writer = new Writer();
+        String[] packedWords = new String[validCount];
+        byte[] packedRanks = new byte[validCount];
+        int[] blockOffsets = new int[(validCount + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        int packedCount = 0;
+        String previous = null;
+        for (int i = 0; i < validCount; i++) {
+            final String word = words[order[i].intValue()];
+            final int rank = quantizeRank(ranks[order[i].intValue()], rankCount);
+            if (word.equals(previous)) {
+                packedRanks[packedCount - 1] = (byte) Math.max(packedRanks[packedCount - 1] & 0xFF, rank);
+                continue;
+            }
+            int prefixLength = 0;
+            if (packedCount % BLOCK_SIZE == 0) {
+                blockOffsets[packedCount / BLOCK_SIZE] = writer.mBitCount;
+            } else {
+                while (prefixLength < word.length() && prefixLength < previous.length()
+                        && word.charAt(prefixLength) == previous.charAt(prefixLength)) {
+                    prefixLength++;
+                }
+                writer.writeLength(prefixLength);
+            }
+            writer.writeLength(word.length() - prefixLength);
+            for (int j = prefixLength; j < word.length(); j++) {
+                writer.writeBits(PersianCharClass.getTrieIndex(word.charAt(j)), SYMBOL_BITS);
+            }
+            packedWords[packedCount] = word;
+            packedRanks[packedCount++] = (byte) rank;
+            previous = word;
+        }
+
+        int[] shortPrefixStarts = new int[NUM_SHORT_PREFIXES + 1];
+        int[] shortPrefixIds = buildShortPrefixTables(packedWords, packedRanks, packedCount, shortPrefixStarts);
+        return new PackedWordList(packedCount, writer.toByteArray(),
+                trim(blockOffsets, (packedCount + BLOCK_SIZE - 1) / BLOCK_SIZE), trim(packedRanks, packedCount),
+                shortPrefixStarts, shortPrefixIds, WordHash.build(packedWords, packedCount));
+    }
+
+    /**
+     * Search a trie of the packed words for every short query, the way the
+     * guesser searches a shard, and fill in where the ids for each query
+     * start.  Returns the ids.  A query of two characters is only searched
+     * if its first character matches something.
+     */
+    private static int[] buildShortPrefixTables(String[] words, byte[] ranks, int count, int[] starts) {
+        int[] wordRanks = new int[count];
+        for (int i = 0; i < count; i++) {
+            wordRanks[i] = ranks[i] & 0xFF;
+        }
+        TrieIndex trie = PackedTrie.build(words, wordRanks, count, false);
+
+        int[] ids = new int[1024];
+        int idCount = 0;
+        for (int key = 0; key < NUM_SHORT_PREFIXES; key++) {
+            starts[key] = idCount;
+            if (key >= PersianCharClass.NUM_VALID_CHARACTERS) {
+                final int first = key / PersianCharClass.NUM_VALID_CHARACTERS - 1;
+                if (starts[first] == starts[first + 1]) {
+                    continue;
+                }
+            }
+            ArrayList<String> guesses = PersianWordGuesser.searchDictionary(trie, getShortPrefix(key));
+            for (int i = 0; i < guesses.size(); i++) {
+                if (idCount == ids.length) {
+                    int[] moreIds = new int[ids.length * 2];
+                    System.arraycopy(ids, 0, moreIds, 0, idCount);
+                    ids = moreIds;
+                }
+                ids[idCount++] = Arrays.binarySearch(words, 0, count, guesses.get(i), WORD_ORDER);
+            }
+        }
+        starts[NUM_SHORT_PREFIXES] = idCount;
+        return trim(ids, idCount);
+    }
+
+    private static int[] trim(int[] array, int length) {
+        if (array.length == length) {
+            return array;
+        }
+        int[] trimmed = new int[length];
+        System.arraycopy(array, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+    private static byte[] trim(byte[] array, int length) {
+        if (array.length == length) {
+            return array;
+        }
+        byte[] trimmed = new byte[length];
+        System.arraycopy(array, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+    /**
+     * Whether the word can be packed: it is not empty, and every character
+     * has a trie index.
+     */
+    static boolean isValidWord(String word) {
+        if (word.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (!PersianCharClass.isValid(word.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final Comparator<String> WORD_ORDER = new Comparator<String>() {
+        public int compare(String a, String b) {
+            return compareWords(a, b);
+        }
+    };
+
+    /**
+     * Compare words by the trie indices of their characters.
+     */
+    static int compareWords(String a, String b) {
+        final int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            final int difference = PersianCharClass.getTrieIndex(a.charAt(i))
+                    - PersianCharClass.getTrieIndex(b.charAt(i));
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    private static class Writer {
+        byte[] mBytes = new byte[1024];
+        int mBitCount;
+
+        void writeLength(int length) {
+            do {
+                int unit = length & LENGTH_MASK;
+                length >>>= LENGTH_BITS;
+                if (length != 0) {
+                    unit |= LENGTH_CONTINUES;
+                }
+                writeBits(unit, SYMBOL_BITS);
+            } while (length != 0);
+        }
+
+        void writeBits(int value, int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                final int byteOffset = mBitCount >> 3;
+                if (byteOffset == mBytes.length) {
+                    byte[] bytes = new byte[mBytes.length * 2];
+                    System.arraycopy(mBytes, 0, bytes, 0, mBytes.length);
+                    mBytes = bytes;
+                }
+                if (((value >> i) & 1) != 0) {
+                    mBytes[byteOffset] |= 0x80 >> (mBitCount & 7);
+                }
+                mBitCount++;
+            }
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = new byte[(mBitCount + 7) >> 3];
+            System.arraycopy(mBytes, 0, bytes, 0, bytes.length);
+            return bytes;
+        }
+    }
+
+    /**
+     * Write the list in the packed dictionary file format: MAGIC, the number
+     * of words, the number of bytes of word data, the data, the block
+     * offsets and the rank buckets, a byte each.  Then, for each short query
+     * in order of key, the number of its ids as a byte, and then all the ids.
+     * Last is the hash of the words (see WordHash.writeTo).
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(mCount);
+        out.writeInt(mData.length);
+        out.write(mData);
+        for (int i = 0; i < mBlockOffsets.length; i++) {
+            out.writeInt(mBlockOffsets[i]);
+        }
+        out.write(mRanks);
+        for (int key = 0; key < NUM_SHORT_PREFIXES; key++) {
+            out.writeByte(mShortPrefixStarts[key + 1] - mShortPrefixStarts[key]);
+        }
+        for (int i = 0; i < mShortPrefixIds.length; i++) {
+            out.writeInt(mShortPrefixIds[i]);
+        }
+        mWordHash.writeTo(out);
+    }
+
+    /**
+     * Read a list written by writeTo, after its MAGIC has been read.
+     */
+    static PackedWordList readFrom(DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        int[] blockOffsets = new int[(count + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        for (int i = 0; i < blockOffsets.length; i++) {
+            blockOffsets[i] = in.readInt();
+        }
+        byte[] ranks = new byte[count];
+        in.readFully(ranks);
+        int[] shortPrefixStarts = new int[NUM_SHORT_PREFIXES + 1];
+        for (int key = 0; key < NUM_SHORT_PREFIXES; key++) {
+            shortPrefixStarts[key + 1] = shortPrefixStarts[key] + in.readUnsignedByte();
+        }
+        int[] shortPrefixIds = new int[shortPrefixStarts[NUM_SHORT_PREFIXES]];
+        for (int i = 0; i < shortPrefixIds.length; i++) {
+            shortPrefixIds[i] = in.readInt();
+        }
+        WordHash wordHash = WordHash.readFrom(in);
+        return new PackedWordList(count, data, blockOffsets, ranks, shortPrefixStarts, shortPrefixIds, wordHash);
+    }
+}
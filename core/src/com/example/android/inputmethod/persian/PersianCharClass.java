@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Precomputed character classes for every char.  Each char maps to a single
+ * int which encodes its index in the dictionary trie, the index of the
+ * letter it folds to (e.g., alef with hamza folds to alef), and whether it is
+ * a letter or a word separator.  All the per-keystroke character checks are
+ * therefore a table lookup, with no allocation.
+ *
+ * The table is two-level: the high byte of the char selects a page of 256
+ * entries, and identical pages are shared.
+ */
+final class PersianCharClass {
+
+    // We recognise 48 Perso-Arabic characters.
+    // We also allow a word to have a zero-width space (treat as a 49th character).
+    // Furthermore, we have some expressions in our dictionary, and so some
+    // entries will have (regular) spaces (treat as a 50th character).
+    static final int NUM_VALID_CHARACTERS = 50;
+    static final int NUM_MAIN_ARABIC_CHARACTERS = 42;
+
+    // Trie indices of the characters that get special treatment.
+    static final int INDEX_ALEF = '\u0627' - '\u0621';
+    static final int INDEX_ZWNJ = 48;
+    static final int INDEX_SPACE = 49;
+
+    private static final int NO_INDEX = 0x3F;
+    private static final int INDEX_MASK = 0x3F;
+    private static final int FOLD_SHIFT = 6;
+    private static final int FLAG_LETTER = 1 << 12;
+    private static final int FLAG_SEPARATOR = 1 << 13;
+
+    // The characters after the main block of Arabic characters, in trie order.
+    private static final char[] EXTRA_CHARACTERS = {
+        '\u067E', // Persian peh
+        '\u0686', // Persian cheh
+        '\u0698', // Persian zheh
+        '\u06A9', // Persian kaf
+        '\u06AF', // Persian gaf
+        '\u06CC', // Persian yeh
+        '\u200C', // zero-width non-joiner
+        ' ',    // regular space
+    };
+
+    // Letters that the user may type without the diacritic, and the letter
+    // they fold to.
+    private static final char[][] FOLDS = {
+        { '\u0622', '\u0627' }, // alef with madda above -> alef
+        { '\u0623', '\u0627' }, // alef with hamza above -> alef
+        { '\u0625', '\u0627' }, // alef with hamza below -> alef
+        { '\u0624', '\u0648' }, // vav with hamza above -> vav
+        { '\u0626', '\u06CC' }, // yeh with hamza above -> Persian yeh
+    };
+
+    private static final char[] INDEX_TO_CHAR = new char[NUM_VALID_CHARACTERS];
+    private static final int[][] VARIANTS = new int[NUM_VALID_CHARACTERS][];
+
+    // The table without any word separators, and the table in use.
+    private static final int[][] sBasePages = new int[256][];
+    private static volatile int[][] sPages;
+
+    static {
+        for (int i = 0; i < NUM_MAIN_ARABIC_CHARACTERS; i++) {
+            INDEX_TO_CHAR[i] = (char)('\u0621' + i);
+        }
+        for (int i = 0; i < EXTRA_CHARACTERS.length; i++) {
+            INDEX_TO_CHAR[NUM_MAIN_ARABIC_CHARACTERS + i] = EXTRA_CHARACTERS[i];
+        }
+
+        int[] folds = new int[NUM_VALID_CHARACTERS];
+        int[] variantCounts = new int[NUM_VALID_CHARACTERS];
+        for (int i = 0; i < NUM_VALID_CHARACTERS; i++) {
+            folds[i] = i;
+        }
+        for (char[] fold : FOLDS) {
+            int variant = computeIndex(fold[0]);
+            int base = computeIndex(fold[1]);
+            folds[variant] = base;
+            variantCounts[base]++;
+        }
+        for (int i = 0; i < NUM_VALID_CHARACTERS; i++) {
+            VARIANTS[i] = new int[variantCounts[i]];
+            variantCounts[i] = 0;
+        }
+        for (char[] fold : FOLDS) {
+            int base = computeIndex(fold[1]);
+            VARIANTS[base][variantCounts[base]++] = computeIndex(fold[0]);
+        }
+
+        // Build each page, sharing the ones which are identical.
+        HashMap<Integer, int[]> uniquePages = new HashMap<Integer, int[]>();
+        for (int page = 0; page < 256; page++) {
+            int[] entries = new int[256];
+            for (int low = 0; low < 256; low++) {
+                char c = (char)((page << 8) | low);
+                int index = computeIndex(c);
+                int entry;
+                if (index < 0) {
+                    entry = NO_INDEX | (NO_INDEX << FOLD_SHIFT);
+                } else {
+                    entry = index | (folds[index] << FOLD_SHIFT);
+                }
+                if (Character.isLetter(c)) {
+                    entry |= FLAG_LETTER;
+                }
+                entries[low] = entry;
+            }
+            Integer hash = Integer.valueOf(Arrays.hashCode(entries));
+            int[] existing = uniquePages.get(hash);
+            if (existing != null && Arrays.equals(existing, entries)) {
+                entries = existing;
+            } else if (existing == null) {
+                uniquePages.put(hash, entries);
+            }
+            sBasePages[page] = entries;
+        }
+        sPages = sBasePages;
+    }
+
+    private PersianCharClass() {
+    }
+
+    // Only used to build the table.
+    private static int computeIndex(char c) {
+        if (c >= '\u0621' && c < '\u0621' + NUM_MAIN_ARABIC_CHARACTERS) {
+            return c - '\u0621';
+        }
+        for (int i = 0; i < EXTRA_CHARACTERS.length; i++) {
+            if (c == EXTRA_CHARACTERS[i]) {
+                return NUM_MAIN_ARABIC_CHARACTERS + i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lookup(int c) {
+        if (c < 0 || c > 0xFFFF) {
+            return NO_INDEX | (NO_INDEX << FOLD_SHIFT);
+        }
+        return sPages[c >> 8][c & 0xFF];
+    }
+
+    /**
+     * Mark the given characters as word separators, replacing any previous
+     * set of separators.
+     */
+    static void setWordSeparators(String separators) {
+        int[][] pages = sBasePages.clone();
+        for (int i = 0; i < separators.length(); i++) {
+            char c = separators.charAt(i);
+            int page = c >> 8;
+            if (pages[page] == sBasePages[page]) {
+                // Copy on write, since base pages may be shared.
+                pages[page] = sBasePages[page].clone();
+            }
+            pages[page][c & 0xFF] |= FLAG_SEPARATOR;
+        }
+        sPages = pages;
+    }
+
+    /**
+     * Returns the index of the character in the dictionary trie, or -1 if the
+     * character cannot appear in a dictionary word.
+     */
+    static int getTrieIndex(char c) {
+        int index = lookup(c) & INDEX_MASK;
+        return index == NO_INDEX ? -1 : index;
+    }
+
+    /**
+     * Returns the trie index of the letter that the character folds to, or
+     * -1 if the character cannot appear in a dictionary word.
+     */
+    static int getFoldIndex(char c) {
+        int index = (lookup(c) >> FOLD_SHIFT) & INDEX_MASK;
+        return index == NO_INDEX ? -1 : index;
+    }
+
+    /**
+     * Inverse of getTrieIndex.
+     */
+    static char indexToChar(int index) {
+        return INDEX_TO_CHAR[index];
+    }
+
+    /**
+     * Returns the trie indices of the characters which fold to the character
+     * with the given trie index, e.g., the hamza and madda forms of alef.
+     */
+    static int[] getVariantIndices(int index) {
+        return VARIANTS[index];
+    }
+
+    /**
+     * Whether the character can appear in a dictionary word.
+     */
+    static boolean isValid(char c) {
+        return (lookup(c) & INDEX_MASK) != NO_INDEX;
+    }
+
+    static boolean isLetter(int code) {
+        return (lookup(code) & FLAG_LETTER) != 0;
+    }
+
+    static boolean isWordSeparator(int code) {
+        return (lookup(code) & FLAG_SEPARATOR) != 0;
+    }
+}
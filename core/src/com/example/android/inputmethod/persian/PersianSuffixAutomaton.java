@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+/**
+ * Completes a query which has passed the end of a known word with the
+ * suffixes and clitics that nouns and adjectives take: the plurals -ha and
+ * -an, the ezafe -ye, the possessives -am, -at, -ash, -eman, -etan and
+ * -eshan, and the copula ast.  A plural may be followed by one of the
+ * others.
+ *
+ * How a suffix is written depends on how the word before it ends: after a
+ * consonant it is joined, after a silent heh (or a yeh) it follows a
+ * zero-width non-joiner and alef, and after alef or vav it takes a yeh.
+ * The query need not have the zero-width non-joiners.
+ */
+final class PersianSuffixAutomaton {
+
+    // The states: after the word, after a plural, and after the last suffix.
+    private static final int STATE_WORD = 0;
+    private static final int STATE_PLURAL = 1;
+    private static final int STATE_FINAL = 2;
+
+    // How the word before a suffix ends.
+    private static final int END_CONSONANT = 0;
+    private static final int END_SILENT_HEH = 1;
+    private static final int END_VOWEL = 2;
+
+    private static final char ZWNJ = '\u200C';
+
+    // The suffixes, most likely first, as { after a consonant, after a silent
+    // heh, after a vowel }.  A null means the suffix is not used there.
+    private static final String[][] SUFFIXES = {
+        { "\u200C\u0647\u0627", "\u200C\u0647\u0627", "\u200C\u0647\u0627" },               // -ha
+        { "\u06CC", "\u200C\u0627\u06CC", "\u06CC" },                                       // -ye
+        { "\u0645", "\u200C\u0627\u0645", "\u06CC\u0645" },                                 // -am
+        { "\u0634", "\u200C\u0627\u0634", "\u06CC\u0634" },                                 // -ash
+        { "\u062A", "\u200C\u0627\u062A", "\u06CC\u062A" },                                 // -at
+        { "\u200C\u0627\u0633\u062A", "\u200C\u0627\u0633\u062A", "\u0633\u062A" },         // ast
+        { "\u0627\u0646", null, null },                                                     // -an
+        { "\u0645\u0627\u0646", "\u200C\u0645\u0627\u0646", "\u06CC\u0645\u0627\u0646" },   // -eman
+        { "\u0634\u0627\u0646", "\u200C\u0634\u0627\u0646", "\u06CC\u0634\u0627\u0646" },   // -eshan
+        { "\u062A\u0627\u0646", "\u200C\u062A\u0627\u0646", "\u06CC\u062A\u0627\u0646" },   // -etan
+    };
+    // The state each suffix may follow, and the state it leads to.
+    private static final int[] SUFFIX_FROM = {
+        STATE_WORD, -1, -1, -1, -1, -1, STATE_WORD, -1, -1, -1 };
+    private static final int[] SUFFIX_TO = {
+        STATE_PLURAL, STATE_FINAL, STATE_FINAL, STATE_FINAL, STATE_FINAL,
+        STATE_FINAL, STATE_PLURAL, STATE_FINAL, STATE_FINAL, STATE_FINAL };
+
+    private PersianSuffixAutomaton() {
+    }
+
+    /**
+     * Add to the guesses the forms of the word with suffixes which match the
+     * query, which starts with the word.  They rank below the word, by how
+     * likely the suffixes are.  No more guesses are added once the set has
+     * reached the given size.
+     */
+    static void guess(String word, int rank, String query, PersianWordGuesser.GuessSet guessSet, int maxSize) {
+        guess(word, rank, STATE_WORD, query, word.length(), guessSet, maxSize);
+    }
+
+    private static void guess(String word, int rank, int state, String query, int position,
+            PersianWordGuesser.GuessSet guessSet, int maxSize) {
+        final int end = getEnd(word);
+        for (int i = 0; i < SUFFIXES.length && guessSet.size() < maxSize; i++) {
+            // A suffix marked -1 follows either the word or a plural.
+            if (SUFFIX_FROM[i] != -1 && SUFFIX_FROM[i] != state) {
+                continue;
+            }
+            final String suffix = SUFFIXES[i][end];
+            if (suffix == null) {
+                continue;
+            }
+            final int next = match(query, position, suffix);
+            if (next == -1) {
+                continue;
+            }
+            final String form = word + suffix;
+            final int formRank = Math.max(0, rank - 1 - i);
+            if (next == query.length()) {
+                guessSet.add(form, formRank);
+            }
+            if (SUFFIX_TO[i] != STATE_FINAL) {
+                guess(form, formRank, SUFFIX_TO[i], query, next, guessSet, maxSize);
+            }
+        }
+    }
+
+    private static int getEnd(String word) {
+        switch (word.charAt(word.length() - 1)) {
+            case '\u0647': // heh
+            case '\u06CC': // Persian yeh
+                return END_SILENT_HEH;
+            case '\u0627': // alef
+            case '\u0648': // vav
+                return END_VOWEL;
+            default:
+                return END_CONSONANT;
+        }
+    }
+
+    /**
+     * Match the suffix against the query from the given position, skipping
+     * zero-width non-joiners which were not typed.  Returns the position
+     * after the match, which is the end of the query if it ends within the
+     * suffix, or -1 if they differ.
+     */
+    private static int match(String query, int position, String suffix) {
+        for (int i = 0; i < suffix.length() && position < query.length(); i++) {
+            final char c = suffix.charAt(i);
+            if (c == ZWNJ && query.charAt(position) != ZWNJ) {
+                continue;
+            }
+            if (query.charAt(position) != c) {
+                return -1;
+            }
+            position++;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.util.HashMap;
+
+/**
+ * Generates the conjugated forms of Persian verbs as they are guessed, so
+ * that only the stems of each verb are stored.
+ *
+ * A verb form is a prefix, a stem and one of the ENDINGS, as described by
+ * one of the forms (FORM_PREFIXES, FORM_STEMS and so on).  The stems are kept in a
+ * trie, so a query is matched by trying each prefix against its start, and
+ * then following the rest of it through the trie.  Stems which begin with
+ * alef with madda take joined prefixes, after which the madda is dropped.
+ */
+class PersianVerbGenerator {
+
+    // The kinds of stem.
+    static final int STEM_PAST = 0;
+    static final int STEM_PRESENT = 1;
+    static final int STEM_COLLOQUIAL = 2;
+
+    /**
+     * Common verbs, most common first, as { past stem, present stem,
+     * colloquial present stem }.  The colloquial stem may be null.
+     */
+    static final String[][] COMMON_ROOTS = {
+        { "\u06A9\u0631\u062F", "\u06A9\u0646", null },                           // kard, kon
+        { "\u0634\u062F", "\u0634\u0648", "\u0634" },                             // shod, shav, sh
+        { "\u062F\u0627\u0634\u062A", "\u062F\u0627\u0631", null },               // dasht, dar
+        { "\u06AF\u0641\u062A", "\u06AF\u0648", "\u06AF" },                       // goft, gu, g
+        { "\u0631\u0641\u062A", "\u0631\u0648", "\u0631" },                       // raft, rav, r
+        { "\u0622\u0645\u062F", "\u0622\u06CC", "\u0622" },                       // amad, ay, a
+        { "\u062F\u0627\u062F", "\u062F\u0647", "\u062F" },                       // dad, deh, d
+        { "\u062F\u06CC\u062F", "\u0628\u06CC\u0646", null },                     // did, bin
+        { "\u062E\u0648\u0627\u0633\u062A", "\u062E\u0648\u0627\u0647", null },   // khast, khah
+        { "\u06AF\u0631\u0641\u062A", "\u06AF\u06CC\u0631", null },               // gereft, gir
+        { "\u062F\u0627\u0646\u0633\u062A", "\u062F\u0627\u0646", null },         // danest, dan
+        { "\u0632\u062F", "\u0632\u0646", null },                                 // zad, zan
+        { "\u062E\u0648\u0631\u062F", "\u062E\u0648\u0631", null },               // khord, khor
+        { "\u0622\u0648\u0631\u062F", "\u0622\u0648\u0631", "\u0622\u0631" },     // avard, avar, ar
+        { "\u0646\u0648\u0634\u062A", "\u0646\u0648\u06CC\u0633", null },         // nevesht, nevis
+        { "\u062E\u0648\u0627\u0646\u062F", "\u062E\u0648\u0627\u0646", null },   // khand, khan
+    };
+
+    // The rank of the most common verb.  The forms of less common verbs, and
+    // less likely forms, rank lower.
+    static final int TOP_VERB_RANK = PackedWordList.MAX_RANK / 2;
+
+    private static final char ALEF = '\u0627';
+    private static final char ALEF_WITH_MADDA = '\u0622';
+    private static final char YEH = '\u06CC';
+
+    private static final String MI = "\u0645\u06CC\u200C";          // mi- (with zero-width non-joiner)
+    private static final String NEMI = "\u0646\u0645\u06CC\u200C";  // nemi- (with zero-width non-joiner)
+    private static final String BE = "\u0628";                      // be-
+    private static final String NA = "\u0646";                      // na-
+    private static final String MI_JOINED = "\u0645\u06CC";         // mi- (joined)
+    private static final String NEMI_JOINED = "\u0646\u0645\u06CC"; // nemi- (joined)
+    private static final String BI = "\u0628\u06CC";                // bi-
+    private static final String NAY = "\u0646\u06CC\u06CC";         // nay-
+
+    // The forms, least likely first.  A form has a prefix (and the prefix
+    // used before alef with madda), a kind of stem, whether the third person
+    // ending is -ad rather than -e, and whether there is a bare form (with no
+    // ending, as in the imperative).
+    private static final String[] FORM_PREFIXES = {
+        NEMI, NA, NEMI, NEMI, MI, "", NA, NA, BE, BE, MI, MI };
+    private static final String[] FORM_MADDA_PREFIXES = {
+        NEMI_JOINED, NAY, NEMI_JOINED, NEMI_JOINED, MI_JOINED, "", NAY, NAY, BI, BI, MI_JOINED, MI_JOINED };
+    private static final int[] FORM_STEMS = {
+        STEM_PAST, STEM_PAST, STEM_PRESENT, STEM_COLLOQUIAL, STEM_PAST, STEM_PAST,
+        STEM_PRESENT, STEM_COLLOQUIAL, STEM_PRESENT, STEM_COLLOQUIAL, STEM_PRESENT, STEM_COLLOQUIAL };
+    private static final boolean[] FORM_AD_ENDINGS = {
+        false, false, true, false, false, false, true, false, true, false, true, false };
+    private static final boolean[] FORM_BARE_ENDINGS = {
+        true, true, true, false, true, true, true, false, true, false, false, false };
+    private static final int NUM_FORMS = FORM_PREFIXES.length;
+
+    // The endings, least likely first.  ENDING_THIRD_PERSON is -ad or -e, and
+    // ENDING_BARE is empty (and drops a final yeh from the stem, as do the
+    // endings after it).
+    private static final String[] ENDINGS = {
+        "\u0646\u062F",     // -nd
+        "\u06CC\u062F",     // -id
+        "\u06CC\u0645",     // -im
+        null,               // -ad or -e
+        "",                 // -(nothing)
+        "\u06CC",           // -i
+        "\u0645",           // -am
+    };
+    private static final int ENDING_THIRD_PERSON = 3;
+    private static final int ENDING_BARE = 4;
+    private static final String AD = "\u062F";
+    private static final String E = "\u0647";
+
+    // The verbs, in order of rank (highest first).
+    private String[][] mRoots = new String[16][];
+    private int[] mRootRanks = new int[16];
+    private int mRootCount = 0;
+
+    // The stems.  A stem of a verb beginning with alef with madda is also
+    // stored with plain alef, for use after the joined prefixes.  Stems that
+    // fold to the same letters are chained together.
+    private String[] mStems;
+    private int[] mStemRoots;
+    private int[] mStemKinds;
+    private boolean[] mStemIsMaddaForm;
+    private int[] mStemNext;
+    private int mStemCount;
+    // The stems by spelling, with the last of each chain as the rank.  Built
+    // when first needed after the verbs change.
+    private PackedTrie mStemTrie = null;
+
+    /**
+     * Add the verbs in COMMON_ROOTS, from TOP_VERB_RANK down.
+     */
+    void addCommonRoots() {
+        for (int i = 0; i < COMMON_ROOTS.length; i++) {
+            addRoot(COMMON_ROOTS[i][0], COMMON_ROOTS[i][1], COMMON_ROOTS[i][2],
+                    Math.max(0, TOP_VERB_RANK - i));
+        }
+    }
+
+    /**
+     * Add a verb.  Its forms rank below the given rank, by how likely they
+     * are.
+     */
+    void addRoot(String pastStem, String presentStem, String colloquialPresentStem, int rank) {
+        if (mRootCount == mRoots.length) {
+            String[][] roots = new String[mRootCount * 2][];
+            System.arraycopy(mRoots, 0, roots, 0, mRootCount);
+            mRoots = roots;
+            int[] ranks = new int[mRootCount * 2];
+            System.arraycopy(mRootRanks, 0, ranks, 0, mRootCount);
+            mRootRanks = ranks;
+        }
+        // Keep the verbs in order of rank.
+        int i = mRootCount++;
+        while (i > 0 && mRootRanks[i - 1] < rank) {
+            mRoots[i] = mRoots[i - 1];
+            mRootRanks[i] = mRootRanks[i - 1];
+            i--;
+        }
+        mRoots[i] = new String[] { pastStem, presentStem, colloquialPresentStem };
+        mRootRanks[i] = rank;
+        mStemTrie = null;
+    }
+
+    /**
+     * Add the forms which match the query to the guesses.  A zero-width
+     * non-joiner after a prefix need not be typed.
+     */
+    void guess(String query, PersianWordGuesser.GuessSet guessSet) {
+        if (mRootCount == 0) {
+            return;
+        }
+        final PackedTrie stemTrie = getStemTrie();
+
+        // The most likely forms first, so that they are not crowded out.
+        for (int form = NUM_FORMS - 1; form >= 0 && !guessSet.isFull(); form--) {
+            guessWithPrefix(query, form, FORM_PREFIXES[form], false, stemTrie, guessSet);
+            if (FORM_PREFIXES[form].length() > 0) {
+                guessWithPrefix(query, form, FORM_MADDA_PREFIXES[form], true, stemTrie, guessSet);
+            }
+        }
+    }
+
+    /**
+     * Returns the rank of the word if it is a form of a known verb, or -1.
+     */
+    int getRank(String word) {
+        PersianWordGuesser.GuessSet guessSet = new PersianWordGuesser.GuessSet();
+        guess(word, guessSet);
+        return guessSet.getRank(word);
+    }
+
+    private void guessWithPrefix(String query, int form, String prefix, boolean isMaddaPrefix,
+            PackedTrie stemTrie, PersianWordGuesser.GuessSet guessSet) {
+        // The prefix may be typed without its zero-width non-joiner.
+        String typedPrefix = prefix;
+        if (prefix.length() > 0 && prefix.charAt(prefix.length() - 1) == '\u200C') {
+            guessWithTypedPrefix(query, form, prefix, prefix, isMaddaPrefix, stemTrie, guessSet);
+            typedPrefix = prefix.substring(0, prefix.length() - 1);
+        }
+        guessWithTypedPrefix(query, form, prefix, typedPrefix, isMaddaPrefix, stemTrie, guessSet);
+    }
+
+    private void guessWithTypedPrefix(String query, int form, String prefix, String typedPrefix,
+            boolean isMaddaPrefix, PackedTrie stemTrie, PersianWordGuesser.GuessSet guessSet) {
+        if (isStartOf(query, typedPrefix)) {
+            // Every verb with a stem of the right kind matches, so take them
+            // in order of rank.
+            for (int root = 0; root < mRootCount && !guessSet.isFull(); root++) {
+                String stem = mRoots[root][FORM_STEMS[form]];
+                if (stem == null
+                        || (prefix.length() > 0 && (stem.charAt(0) == ALEF_WITH_MADDA) != isMaddaPrefix)) {
+                    continue;
+                }
+                if (isMaddaPrefix) {
+                    stem = ALEF + stem.substring(1);
+                }
+                addForms(query, form, prefix, typedPrefix, stem, mRootRanks[root], guessSet);
+            }
+            return;
+        }
+        if (!isStartOf(typedPrefix, query)) {
+            return;
+        }
+
+        // Follow the rest of the query through the stems, which are stored
+        // folded, as the variants of a letter may be typed as the letter.
+        // The stems it passes through may be followed by an ending, and the
+        // stems below where it ends may be followed by any ending.
+        final String rest = query.substring(typedPrefix.length());
+        int node = stemTrie.getRoot();
+        for (int i = 0; i < rest.length() && node != TrieIndex.NO_NODE; i++) {
+            if (stemTrie.isTerminal(node)) {
+                addStemForms(query, form, prefix, typedPrefix, isMaddaPrefix, stemTrie.getRank(node), guessSet);
+            }
+            final int index = PersianCharClass.getFoldIndex(rest.charAt(i));
+            node = (index == -1) ? TrieIndex.NO_NODE : stemTrie.getChild(node, index);
+        }
+        if (node != TrieIndex.NO_NODE) {
+            addSubtreeForms(query, form, prefix, typedPrefix, isMaddaPrefix, stemTrie, node, guessSet);
+        }
+    }
+
+    private void addSubtreeForms(String query, int form, String prefix, String typedPrefix,
+            boolean isMaddaPrefix, PackedTrie stemTrie, int node, PersianWordGuesser.GuessSet guessSet) {
+        if (stemTrie.isTerminal(node)) {
+            addStemForms(query, form, prefix, typedPrefix, isMaddaPrefix, stemTrie.getRank(node), guessSet);
+        }
+        final int childCount = stemTrie.getChildCount(node);
+        for (int i = 0; i < childCount && !guessSet.isFull(); i++) {
+            addSubtreeForms(query, form, prefix, typedPrefix, isMaddaPrefix, stemTrie,
+                    stemTrie.getChildAt(node, i), guessSet);
+        }
+    }
+
+    // Add the forms for each of a chain of stems that fits the form.
+    private void addStemForms(String query, int form, String prefix, String typedPrefix,
+            boolean isMaddaPrefix, int stem, PersianWordGuesser.GuessSet guessSet) {
+        for (; stem != -1; stem = mStemNext[stem]) {
+            if (mStemKinds[stem] != FORM_STEMS[form]) {
+                continue;
+            }
+            // After a prefix, a stem beginning with alef with madda is only
+            // used in its plain alef form, after a joined prefix.
+            if (prefix.length() > 0) {
+                final boolean hasMadda = mStems[stem].charAt(0) == ALEF_WITH_MADDA;
+                if (hasMadda || mStemIsMaddaForm[stem] != isMaddaPrefix) {
+                    continue;
+                }
+            } else if (mStemIsMaddaForm[stem]) {
+                continue;
+            }
+            addForms(query, form, prefix, typedPrefix, mStems[stem], mRootRanks[mStemRoots[stem]], guessSet);
+        }
+    }
+
+    // Add the forms of the stem with the prefix which match the query.
+    private void addForms(String query, int form, String prefix, String typedPrefix, String stem, int rootRank,
+            PersianWordGuesser.GuessSet guessSet) {
+        final int formPenalty = NUM_FORMS - 1 - form;
+        for (int ending = 0; ending < ENDINGS.length; ending++) {
+            String suffix = ENDINGS[ending];
+            if (ending == ENDING_THIRD_PERSON) {
+                // -ad when the form has it, or if the stem ends in alef.
+                suffix = (FORM_AD_ENDINGS[form] || stem.charAt(stem.length() - 1) == ALEF) ? AD : E;
+            } else if (ending == ENDING_BARE) {
+                if (!FORM_BARE_ENDINGS[form]) {
+                    continue;
+                }
+                // The bare form, and those after it, drop a final yeh.
+                if (stem.length() > 1 && stem.charAt(stem.length() - 1) == YEH) {
+                    stem = stem.substring(0, stem.length() - 1);
+                }
+            }
+            if (!matches(query, typedPrefix, stem, suffix)) {
+                continue;
+            }
+            final int penalty = formPenalty + (ENDINGS.length - 1 - ending);
+            guessSet.add(prefix + stem + suffix, Math.max(0, rootRank - penalty));
+        }
+    }
+
+    // Returns whether the query is a prefix of the concatenated parts.
+    private static boolean matches(String query, String first, String second, String third) {
+        int i = 0;
+        for (int j = 0; i < query.length() && j < first.length(); i++, j++) {
+            if (!matchesChar(query.charAt(i), first.charAt(j))) {
+                return false;
+            }
+        }
+        for (int j = 0; i < query.length() && j < second.length(); i++, j++) {
+            if (!matchesChar(query.charAt(i), second.charAt(j))) {
+                return false;
+            }
+        }
+        for (int j = 0; i < query.length() && j < third.length(); i++, j++) {
+            if (!matchesChar(query.charAt(i), third.charAt(j))) {
+                return false;
+            }
+        }
+        return i == query.length();
+    }
+
+    // Returns whether the start of the longer text is typed as the shorter.
+    private static boolean isStartOf(String typed, String text) {
+        if (typed.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < typed.length(); i++) {
+            if (!matchesChar(typed.charAt(i), text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Whether the typed character matches the character of a form: either
+    // it is the same, or the form has a variant of it (e.g., alef with madda
+    // for alef), as in the dictionary search.
+    private static boolean matchesChar(char typed, char c) {
+        return typed == c || PersianCharClass.getFoldIndex(c) == PersianCharClass.getTrieIndex(typed);
+    }
+
+    // The stem with each letter replaced by the letter it folds to.
+    private static String fold(String stem) {
+        char[] folded = new char[stem.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = PersianCharClass.indexToChar(PersianCharClass.getFoldIndex(stem.charAt(i)));
+        }
+        return new String(folded);
+    }
+
+    private PackedTrie getStemTrie() {
+        if (mStemTrie == null) {
+            final int maxStems = 2 * 3 * mRootCount;
+            mStems = new String[maxStems];
+            mStemRoots = new int[maxStems];
+            mStemKinds = new int[maxStems];
+            mStemIsMaddaForm = new boolean[maxStems];
+            mStemNext = new int[maxStems];
+            mStemCount = 0;
+            HashMap<String,Integer> lastStems = new HashMap<String,Integer>();
+            for (int root = 0; root < mRootCount; root++) {
+                for (int kind = STEM_PAST; kind <= STEM_COLLOQUIAL; kind++) {
+                    final String stem = mRoots[root][kind];
+                    if (stem == null || stem.length() == 0) {
+                        continue;
+                    }
+                    addStem(stem, root, kind, false, lastStems);
+                    if (stem.charAt(0) == ALEF_WITH_MADDA) {
+                        addStem(ALEF + stem.substring(1), root, kind, true, lastStems);
+                    }
+                }
+            }
+            String[] foldedStems = new String[mStemCount];
+            int[] ids = new int[mStemCount];
+            for (int i = 0; i < mStemCount; i++) {
+                foldedStems[i] = fold(mStems[i]);
+                ids[i] = i;
+            }
+            // A stem folded the same as an earlier one has a higher id, so
+            // the trie keeps the last of each chain.
+            mStemTrie = PackedTrie.build(foldedStems, ids, mStemCount, false);
+        }
+        return mStemTrie;
+    }
+
+    private void addStem(String stem, int root, int kind, boolean isMaddaForm, HashMap<String,Integer> lastStems) {
+        final String folded = fold(stem);
+        final Integer last = lastStems.get(folded);
+        mStems[mStemCount] = stem;
+        mStemRoots[mStemCount] = root;
+        mStemKinds[mStemCount] = kind;
+        mStemIsMaddaForm[mStemCount] = isMaddaForm;
+        mStemNext[mStemCount] = (last == null) ? -1 : last.intValue();
+        lastStems.put(folded, Integer.valueOf(mStemCount));
+        mStemCount++;
+    }
+}
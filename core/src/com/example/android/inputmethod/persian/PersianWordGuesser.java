@@ -0,0 +1,1002 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Given a Persian word, guess what the user may have intended to type.
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author D. L. Yonge-Mallo
+ *
+ */
+public class PersianWordGuesser {
+    private SelectedWordStore mSelectedWordStore;
+    final static int MAX_TOTAL_GUESSES = 90;
+    final static int MAX_RETURNED_GUESSES = 30; // the service leaves room for the typed word and phrases
+
+    final static int NUM_VALID_CHARACTERS = PersianCharClass.NUM_VALID_CHARACTERS;
+
+    // How many recent queries to remember the guesses for.
+    final static int MAX_CACHED_QUERIES = 32;
+
+    // Queries up to this length are answered from the tables packed with the
+    // dictionary (see PackedWordList.getShortPrefixIds).
+    final static int MAX_SHORT_PREFIX_LENGTH = 2;
+
+    // A query is only completed with suffixes once it has passed a known
+    // word of at least this length, and only with this many guesses, so
+    // that the words which the query is a prefix of are not crowded out.
+    final static int MIN_SUFFIXED_WORD_LENGTH = 2;
+    final static int MAX_SUFFIX_GUESSES = 10;
+
+    // How many phrases to look at below a phrase cursor.
+    final static int MAX_PHRASE_GUESSES = 10;
+
+    private static class PartialWord {
+        public int node;
+        public String sofar;
+        public PartialWord(int n, String s) {
+            node = n;
+            sofar = s;
+        }
+    }
+
+    /*
+     * Follow the typed word s through the trie, from the given position in
+     * s.  The characters matched so far are in path, which may differ from s
+     * by vowel variants and by zero-width non-joiners that were left out
+     * (see ZwnjRules).
+     */
+    private static void findMatch(TrieIndex trie, int node, GuessSet guessSet, String s, int position,
+        char[] path, int pathLength, LinkedList<PartialWord> partialWordList) {
+        if( guessSet.size() == MAX_TOTAL_GUESSES ) {
+            return;
+        }
+
+        if( position < s.length() ) {
+            // Still trying to make the entire word s.
+            char c = s.charAt(position);
+            int index = PersianCharClass.getTrieIndex(c);
+            int child = trie.getChild(node, index);
+            if( child != TrieIndex.NO_NODE ) {
+                // So far, so good -- check the next character.
+                path[pathLength] = c;
+                findMatch(trie, child, guessSet, s, position+1, path, pathLength+1, partialWordList);
+            }
+
+            // A zero-width non-joiner may have been left out here.
+            if( ZwnjRules.isImplied(path, pathLength, s, position) ) {
+                int zwnjChild = trie.getChild(node, PersianCharClass.INDEX_ZWNJ);
+                if( zwnjChild != TrieIndex.NO_NODE ) {
+                    path[pathLength] = ZwnjRules.ZWNJ;
+                    findMatch(trie, zwnjChild, guessSet, s, position, path, pathLength+1, partialWordList);
+                }
+            }
+
+            // Inexact vowels: check for alef, vav, and yeh with various diacritics.
+            int[] variants = PersianCharClass.getVariantIndices(index);
+            for( int i = 0; i < variants.length; i++ ) {
+                child = trie.getChild(node, variants[i]);
+                if( child != TrieIndex.NO_NODE ) {
+                    path[pathLength] = PersianCharClass.indexToChar(variants[i]);
+                    findMatch(trie, child, guessSet, s, position+1, path, pathLength+1, partialWordList);
+                }
+            }
+
+        } else {
+
+            // We've found the node for what the user has typed, add it, and
+            // investigate its descendents.
+            addDescendents(trie, node, guessSet, new String(path, 0, pathLength), partialWordList);
+        }
+    }
+
+    private static void addDescendents(TrieIndex trie, int node, GuessSet guessSet, String s,
+        LinkedList<PartialWord> partialWordList) {
+
+        if ( trie.isTerminal(node) ) {
+            // We've found a word we're looking for, so add it.
+            guessSet.add(s, trie.getRank(node));
+            if( guessSet.size() == MAX_TOTAL_GUESSES ) {
+                return;
+            }
+        }
+
+        // We want to add the descendents of the current node.
+        // But we want to do this in a breadth-first fashion, so that
+        // no branch monopolizes the remaining guesses.
+        int childCount = trie.getChildCount(node);
+        for( int i = 0; i < childCount; i++ ) {
+            char c = PersianCharClass.indexToChar(trie.getChildIndex(node, i));
+            PartialWord partialWord = new PartialWord(trie.getChildAt(node, i), s + c);
+            partialWordList.add(partialWord);
+        }
+    }
+
+    private static void findPartialMatches(TrieIndex trie, GuessSet guessSet, LinkedList<PartialWord> partialWordList) {
+        findPartialMatches(trie, guessSet, partialWordList, MAX_TOTAL_GUESSES);
+    }
+
+    private static void findPartialMatches(TrieIndex trie, GuessSet guessSet, LinkedList<PartialWord> partialWordList,
+        int maxSize) {
+        while( ( guessSet.size() < maxSize ) && ( partialWordList.size() != 0 )) {
+            PartialWord partialWord = partialWordList.remove();
+            int node = partialWord.node;
+            String sofar = partialWord.sofar;
+
+            addDescendents(trie, node, guessSet, sofar, partialWordList);
+        }
+    }
+
+    private static boolean hasInvalidCharacters(String s) {
+        // Allow only the Persian characters, zero-width non-joiner, and regular space.
+        for( int i = 0; i < s.length(); i++ ) {
+            if( !PersianCharClass.isValid(s.charAt(i)) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void guess(TrieIndex trie, GuessSet guessSet, String s) {
+        if( (trie == null) || hasInvalidCharacters(s) ) {
+            return;
+        }
+
+        LinkedList<PartialWord> partialWordList = new LinkedList<PartialWord>();
+        // Each typed character may have a zero-width non-joiner inserted
+        // before it.
+        char[] path = new char[2 * s.length()];
+        findMatch(trie, trie.getRoot(), guessSet, s, 0, path, 0, partialWordList);
+        findPartialMatches(trie, guessSet, partialWordList);
+    }
+
+    /*
+     * Returns the guesses for the word from a trie of dictionary words
+     * alone, best first.  This is how PackedWordList builds the tables of
+     * the short queries.
+     */
+    static ArrayList<String> searchDictionary(TrieIndex trie, String word) {
+        GuessSet guessSet = new GuessSet();
+        guess(trie, guessSet, word);
+        return guessSet.getBest(MAX_RETURNED_GUESSES);
+    }
+
+    /*
+     * The guesses found so far, each with its highest rank, in the order in
+     * which they were found.  Ranks are small, so many guesses share one;
+     * those keep the order they were found in, which puts the shorter and
+     * closer matches first.
+     */
+    static class GuessSet {
+        // Must be a power of two, and more than MAX_TOTAL_GUESSES.
+        private static final int TABLE_SIZE = 256;
+
+        private final String[] words = new String[MAX_TOTAL_GUESSES];
+        private final int[] ranks = new int[MAX_TOTAL_GUESSES];
+        private int size = 0;
+        // One more than the position of each word, by hash, with linear probing.
+        private final int[] table = new int[TABLE_SIZE];
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isFull() {
+            return size == MAX_TOTAL_GUESSES;
+        }
+
+        public void add(String word, int rank) {
+            int slot = findSlot(word);
+            if( table[slot] != 0 ) {
+                int i = table[slot] - 1;
+                ranks[i] = Math.max(ranks[i], rank);
+            } else if( size < MAX_TOTAL_GUESSES ) {
+                words[size] = word;
+                ranks[size] = rank;
+                table[slot] = ++size;
+            }
+        }
+
+        /*
+         * Returns the rank of the word, or -1 if it is not in the set.
+         */
+        public int getRank(String word) {
+            int slot = findSlot(word);
+            return ( table[slot] != 0 ) ? ranks[table[slot] - 1] : -1;
+        }
+
+        // Returns the slot holding the word, or the empty slot where it goes.
+        private int findSlot(String word) {
+            int slot = word.hashCode() & (TABLE_SIZE - 1);
+            while( (table[slot] != 0) && !words[table[slot] - 1].equals(word) ) {
+                slot = (slot + 1) & (TABLE_SIZE - 1);
+            }
+            return slot;
+        }
+
+        /*
+         * Returns up to max of the words, highest rank first.
+         */
+        public ArrayList<String> getBest(int max) {
+            // A stable insertion sort, of at most MAX_TOTAL_GUESSES words.
+            int[] order = new int[size];
+            for( int i = 0; i < size; i++ ) {
+                int j = i;
+                while( (j > 0) && (ranks[order[j-1]] < ranks[i]) ) {
+                    order[j] = order[j-1];
+                    j--;
+                }
+                order[j] = i;
+            }
+            ArrayList<String> best = new ArrayList<String>();
+            for( int i = 0; (i < size) && (i < max); i++ ) {
+                best.add(words[order[i]]);
+            }
+            return best;
+        }
+    }
+
+    /*
+     * Where a phrase in the dictionary may continue, after one or more of its
+     * words have been committed, each followed by a space.  The cursor is a
+     * set of nodes in the shard trie and in the user word trie, one for each
+     * way the words typed match the phrases: like findMatch, it allows vowel
+     * variants and zero-width non-joiners that were left out.  Only the word
+     * being typed is followed again as it changes, from the nodes after the
+     * committed words, so the phrase is never looked up again from its start.
+     * (A left-out non-joiner before a suffix depends on the characters typed
+     * after it, so the word is followed from its start.)
+     */
+    class PhraseCursor {
+        // The nodes after the committed words, and after the composing text.
+        private ArrayList<PhraseNode> mStartNodes = new ArrayList<PhraseNode>();
+        private ArrayList<PhraseNode> mNodes = new ArrayList<PhraseNode>();
+        private final StringBuilder mPhrase = new StringBuilder();
+
+        PhraseCursor(TrieIndex[] tries) {
+            for( int i = 0; i < tries.length; i++ ) {
+                if( tries[i] != null ) {
+                    mStartNodes.add(new PhraseNode(tries[i], tries[i].getRoot(), ""));
+                }
+            }
+            mNodes = mStartNodes;
+        }
+
+        /*
+         * Returns the words committed so far, each followed by a space.
+         */
+        String getPhrase() {
+            return mPhrase.toString();
+        }
+
+        /*
+         * Add the committed word, and the space after it, to the phrase.
+         * Returns false if no phrase continues with them.
+         */
+        boolean commit(String word) {
+            ArrayList<PhraseNode> nodes = new ArrayList<PhraseNode>();
+            for( PhraseNode start : follow(mStartNodes, word) ) {
+                int node = start.trie.getChild(start.node, PersianCharClass.INDEX_SPACE);
+                if( node != TrieIndex.NO_NODE ) {
+                    nodes.add(new PhraseNode(start.trie, node, ""));
+                }
+            }
+            mStartNodes = nodes;
+            mNodes = nodes;
+            mPhrase.append(word).append(' ');
+            return !nodes.isEmpty();
+        }
+
+        /*
+         * Move the cursor to the end of the word being typed.  Returns false
+         * if no phrase continues with the word.
+         */
+        boolean setComposing(String composing) {
+            mNodes = follow(mStartNodes, composing);
+            return !mNodes.isEmpty();
+        }
+
+        /*
+         * Returns up to max whole phrases which continue from the cursor,
+         * best first.  The committed words are as they were typed, and the
+         * rest as they are in the dictionary.
+         */
+        ArrayList<String> getPhrases(int max) {
+            GuessSet guessSet = new GuessSet();
+            for( PhraseNode phraseNode : mNodes ) {
+                LinkedList<PartialWord> partialWordList = new LinkedList<PartialWord>();
+                addDescendents(phraseNode.trie, phraseNode.node, guessSet, mPhrase + phraseNode.word,
+                    partialWordList);
+                findPartialMatches(phraseNode.trie, guessSet, partialWordList, MAX_PHRASE_GUESSES);
+            }
+            return guessSet.getBest(max);
+        }
+
+        // Returns the nodes reached by following the typed word s from each
+        // of the starting nodes.
+        private ArrayList<PhraseNode> follow(ArrayList<PhraseNode> starts, String s) {
+            ArrayList<PhraseNode> nodes = new ArrayList<PhraseNode>();
+            if( hasInvalidCharacters(s) ) {
+                return nodes;
+            }
+            char[] path = new char[2 * s.length()];
+            for( PhraseNode start : starts ) {
+                follow(start.trie, start.node, s, 0, path, 0, nodes);
+            }
+            return nodes;
+        }
+
+        // As findMatch, but collects the nodes for s rather than the words
+        // below them.
+        private void follow(TrieIndex trie, int node, String s, int position, char[] path, int pathLength,
+            ArrayList<PhraseNode> nodes) {
+            if( nodes.size() == MAX_PHRASE_GUESSES ) {
+                return;
+            }
+            if( position == s.length() ) {
+                nodes.add(new PhraseNode(trie, node, new String(path, 0, pathLength)));
+                return;
+            }
+
+            char c = s.charAt(position);
+            int index = PersianCharClass.getTrieIndex(c);
+            int child = trie.getChild(node, index);
+            if( child != TrieIndex.NO_NODE ) {
+                path[pathLength] = c;
+                follow(trie, child, s, position+1, path, pathLength+1, nodes);
+            }
+
+            if( ZwnjRules.isImplied(path, pathLength, s, position) ) {
+                int zwnjChild = trie.getChild(node, PersianCharClass.INDEX_ZWNJ);
+                if( zwnjChild != TrieIndex.NO_NODE ) {
+                    path[pathLength] = ZwnjRules.ZWNJ;
+                    follow(trie, zwnjChild, s, position, path, pathLength+1, nodes);
+                }
+            }
+
+            int[] variants = PersianCharClass.getVariantIndices(index);
+            for( int i = 0; i < variants.length; i++ ) {
+                child = trie.getChild(node, variants[i]);
+                if( child != TrieIndex.NO_NODE ) {
+                    path[pathLength] = PersianCharClass.indexToChar(variants[i]);
+                    follow(trie, child, s, position+1, path, pathLength+1, nodes);
+                }
+            }
+        }
+    }
+
+    // A node of a trie reached by a phrase cursor, with the dictionary
+    // spelling of the word being typed.
+    private static class PhraseNode {
+        public final TrieIndex trie;
+        public final int node;
+        public final String word;
+        public PhraseNode(TrieIndex t, int n, String w) {
+            trie = t;
+            node = n;
+            word = w;
+        }
+    }
+
+    // The rank of the next word the user selects.  Dictionary words have
+    // quantized ranks, up to PackedWordList.MAX_RANK, and the user's words
+    // rank above all of them, most recent highest.
+    static private int mKnownWordsCount;
+    static private LinkedList<String> mSelectedWords = null;
+
+    // The guesses for queries of one or two characters, which would
+    // otherwise search the largest subtrees.  The dictionary words come
+    // from the list's tables; the user's words and verb forms are added the
+    // first time a query is typed.
+    static private HashMap<String,ArrayList<String>> mShortPrefixGuesses = null;
+
+    // The dictionary, as a packed list of words sorted in trie order.  It is
+    // split into shards by the first letter of each word (with the variants
+    // of a letter in the same shard as the letter), and a shard is only built
+    // into a trie when a word in it is first looked up.  The tries are held
+    // in direct buffers, outside the Java heap.
+    static private PackedWordList mWordList = null;
+    // Finds a word's id in the list, for exact lookups.  It is stored with
+    // the packed list.
+    static private WordHash mWordHash = null;
+    static private TrieIndex[] mShardTries = null;
+    static private int mLastUsedShard = -1;
+    // Whether shards are built as succinct (LOUDS) tries, which take a
+    // fraction of the memory but are slower to search.
+    static private boolean mUseSuccinctTries = false;
+    // The words added since the dictionary was loaded (i.e., selected by the
+    // user), with their ranks, and a trie of them which is searched as well
+    // as the dictionary.  Each selected word is added to the trie as it is
+    // selected.
+    static private HashMap<String,Integer> mUserWordRanks = null;
+    static private HeapTrie mUserWordTrie = null;
+    // Conjugates verbs from their stems, as they are guessed.
+    static private PersianVerbGenerator mVerbGenerator = null;
+
+    // The guesses for recent queries, least recently used first.  Going back
+    // to a word (e.g., by moving the cursor into it) then needs no search.
+    private final LinkedHashMap<String,ArrayList<String>> mGuessCache =
+        new LinkedHashMap<String,ArrayList<String>>(MAX_CACHED_QUERIES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,ArrayList<String>> eldest) {
+                return size() > MAX_CACHED_QUERIES;
+            }
+        };
+
+    // Constructor
+    public PersianWordGuesser(WordListSource wordListSource, SelectedWordStore selectedWordStore) {
+        mSelectedWordStore = selectedWordStore;
+
+        // Read in the words if we don't already have them.
+        if( mWordList == null ) {
+            mSelectedWords = new LinkedList<String>();
+
+            mShortPrefixGuesses = new HashMap<String,ArrayList<String>>();
+            mShardTries = new TrieIndex[NUM_VALID_CHARACTERS];
+            mUserWordRanks = new HashMap<String,Integer>();
+            mUserWordTrie = new HeapTrie();
+
+            try {
+                DataInputStream inStream = new DataInputStream(
+                    new BufferedInputStream(wordListSource.open()));
+                mWordList = readWordList(inStream);
+                inStream.close();
+
+            } catch( IOException e ) {
+                // This is bad.
+            }
+            if( mWordList == null ) {
+                mWordList = PackedWordList.build(new String[0], new int[0], 0);
+            }
+            mWordHash = mWordList.getWordHash();
+            mKnownWordsCount = PackedWordList.MAX_RANK + 1;
+            mVerbGenerator = new PersianVerbGenerator();
+            mVerbGenerator.addCommonRoots();
+
+            // Restore words selected by the user.
+            List<String> words = mSelectedWordStore.load();
+            for( int i = 0; i < words.size(); i++ ) {
+                selectWord(words.get(i));
+            }
+
+        }
+    }
+
+    /*
+     * Put the shared state back as it was before the first guesser was
+     * constructed: the dictionary, the words the user has selected, the
+     * short-prefix guesses, the verb generator and the choice of trie are
+     * all dropped, so that the next guesser reads them again.  This is for
+     * the tests and benchmarks, which need each guesser to start afresh.
+     */
+    static void unloadDictionary() {
+        mKnownWordsCount = 0;
+        mSelectedWords = null;
+        mShortPrefixGuesses = null;
+        mWordList = null;
+        mWordHash = null;
+        mShardTries = null;
+        mLastUsedShard = -1;
+        mUseSuccinctTries = false;
+        mUserWordRanks = null;
+        mUserWordTrie = null;
+        mVerbGenerator = null;
+    }
+
+    public void saveState() {
+        // Save the state of the word list.
+        mSelectedWordStore.save(mSelectedWords);
+    }
+
+    private void addWord(String word, int rank) {
+        mUserWordRanks.put(word, Integer.valueOf(rank));
+        mUserWordTrie.put(word, rank);
+    }
+
+    /*
+     * Returns the trie of the words added since the dictionary was loaded.
+     */
+    TrieIndex getUserWordTrie() {
+        return mUserWordTrie;
+    }
+
+    public void selectWord(String word) {
+        // User has picked the word, so increase its rank, unless it already
+        // has the highest rank.
+        int rank = getRank(word);
+        boolean isSelected = true;
+        if( rank != mKnownWordsCount - 1 ) {
+            // A word selected before has been added, with a rank above the
+            // dictionary's, unless it was in the dictionary's top rank
+            // before any word had been added.
+            isSelected = ( rank >= PackedWordList.MAX_RANK );
+            addWord(word, mKnownWordsCount++);
+            updateShortPrefixGuesses(word);
+            updateCachedGuesses(word);
+        }
+
+        // Add the word to the list of selected words, but first remove it
+        // to ensure that it is always added at the end.  A new word is not
+        // in the list, so the search for it is skipped.
+        if( isSelected ) {
+            mSelectedWords.remove(word);
+        }
+        mSelectedWords.add(word);
+    }
+
+    /*
+     * Returns the rank of the word, or -1 if it is not known.
+     */
+    public int getRank(String word) {
+        int rank = getWordRank(word);
+        if( rank != -1 ) {
+            return rank;
+        }
+        return mVerbGenerator.getRank(word);
+    }
+
+    /*
+     * Returns the rank of the word if it is in the dictionary or has been
+     * added since, or -1.  Unlike getRank, this does not generate verb forms.
+     */
+    private int getWordRank(String word) {
+        Integer userRank = mUserWordRanks.get(word);
+        if( userRank != null ) {
+            return userRank.intValue();
+        }
+        int id = mWordHash.lookup(word);
+        return ( id == -1 ) ? -1 : mWordList.getRank(id);
+    }
+
+    /*
+     * Returns whether the word is in the dictionary or has been added since.
+     */
+    public boolean isKnownWord(String word) {
+        return getRank(word) != -1;
+    }
+
+    /*
+     * Returns a cursor for the phrases which start with the committed word,
+     * or null if there are none.
+     */
+    PhraseCursor startPhrase(String word) {
+        if( (word.length() == 0) || hasInvalidCharacters(word) ) {
+            return null;
+        }
+        TrieIndex[] tries = { getDictionaryTrie(word.charAt(0)), getUserWordTrie() };
+        PhraseCursor cursor = new PhraseCursor(tries);
+        return cursor.commit(word) ? cursor : null;
+    }
+
+    /*
+     * Read the dictionary file.  This is either in the packed format written
+     * by PackedWordList, or a sequence of words written with writeUTF, most
+     * common last, which is packed as it is read (see DictionaryPacker).
+     */
+    static PackedWordList readWordList(DataInputStream inStream) throws IOException {
+        inStream.mark(4);
+        try {
+            if( inStream.readInt() == PackedWordList.MAGIC ) {
+                return PackedWordList.readFrom(inStream);
+            }
+        } catch( EOFException e ) {
+            // Too short to be packed.
+        }
+        inStream.reset();
+
+        String[] words = new String[1024];
+        int count = 0;
+        boolean endOfFile = false;
+        while( !endOfFile ) {
+
+            try {
+                String persianWord = inStream.readUTF();
+                if( count == words.length ) {
+                    String[] moreWords = new String[count * 2];
+                    System.arraycopy(words, 0, moreWords, 0, count);
+                    words = moreWords;
+                }
+                words[count++] = persianWord;
+
+            } catch(EOFException e) {
+                // This is perfectly normal.
+                endOfFile = true;
+            }
+        }
+
+        // The rank of a word is its position in the file.
+        int[] ranks = new int[count];
+        for( int i = 0; i < count; i++ ) {
+            ranks[i] = i;
+        }
+        return PackedWordList.build(words, ranks, count);
+    }
+
+    /*
+     * Returns the shard for the word, i.e., the letter which its first
+     * character folds to, or -1 if it cannot be in the dictionary.
+     */
+    private static int getShardIndex(String word) {
+        if( word.length() == 0 ) {
+            return -1;
+        }
+        return PersianCharClass.getFoldIndex(word.charAt(0));
+    }
+
+    /*
+     * Build the trie for the shard if it is not already built.
+     */
+    private void loadShard(int shard) {
+        mLastUsedShard = shard;
+        if( mShardTries[shard] != null ) {
+            return;
+        }
+
+        // Collect the words starting with each letter in the shard.  Each
+        // letter's words are together in the list.
+        int count = 0;
+        int[] starts = new int[NUM_VALID_CHARACTERS];
+        int[] ends = new int[NUM_VALID_CHARACTERS];
+        for( int i = 0; i < NUM_VALID_CHARACTERS; i++ ) {
+            if( PersianCharClass.getFoldIndex(PersianCharClass.indexToChar(i)) == shard ) {
+                starts[i] = mWordList.getFirstIdFrom(i);
+                ends[i] = mWordList.getFirstIdFrom(i + 1);
+                count += ends[i] - starts[i];
+            }
+        }
+        String[] words = new String[count];
+        int[] ranks = new int[count];
+        count = 0;
+        StringBuilder word = new StringBuilder();
+        for( int i = 0; i < NUM_VALID_CHARACTERS; i++ ) {
+            if( starts[i] == ends[i] ) {
+                continue;
+            }
+            PackedWordList.Reader reader = mWordList.new Reader(starts[i]);
+            for( int id = starts[i]; id < ends[i]; id++ ) {
+                word.setLength(0);
+                reader.next(word);
+                words[count] = word.toString();
+                ranks[count] = mWordList.getRank(id);
+                count++;
+            }
+        }
+
+        if( mUseSuccinctTries ) {
+            mShardTries[shard] = LoudsTrie.build(words, ranks, count);
+        } else {
+            mShardTries[shard] = PackedTrie.build(words, ranks, count, true);
+        }
+    }
+
+    /*
+     * Returns the trie of the dictionary words which may start with the
+     * character, building it if needed, or null if there are none.
+     */
+    TrieIndex getDictionaryTrie(char c) {
+        int shard = PersianCharClass.getFoldIndex(c);
+        if( shard == -1 ) {
+            return null;
+        }
+        loadShard(shard);
+        return mShardTries[shard];
+    }
+
+    /*
+     * Choose between succinct tries and packed tries for the shards.  The
+     * shards already built are dropped, and built again in the new form
+     * when they are next used.
+     */
+    public void setUseSuccinctTries(boolean useSuccinctTries) {
+        if( useSuccinctTries != mUseSuccinctTries ) {
+            mUseSuccinctTries = useSuccinctTries;
+            releaseAllShards();
+            clearCache();
+        }
+    }
+
+    /*
+     * Drop the shard's trie.  It is built again the next time a word in the
+     * shard is looked up.
+     */
+    private void unloadShard(int shard) {
+        mShardTries[shard] = null;
+    }
+
+    /*
+     * Release the memory used by all the shards except the one used last.
+     */
+    public void releaseIdleShards() {
+        for( int i = 0; i < NUM_VALID_CHARACTERS; i++ ) {
+            if( (mShardTries[i] != null) && (i != mLastUsedShard) ) {
+                unloadShard(i);
+            }
+        }
+    }
+
+    /*
+     * Release the memory used by all the shards.  Only the compact records
+     * are kept.
+     */
+    public void releaseAllShards() {
+        for( int i = 0; i < NUM_VALID_CHARACTERS; i++ ) {
+            if( mShardTries[i] != null ) {
+                unloadShard(i);
+            }
+        }
+    }
+
+    /*
+     * Forget the guesses for recent queries.
+     */
+    public void clearCache() {
+        mGuessCache.clear();
+    }
+
+    /*
+     * Forget the guesses for recent queries and for the short queries, to
+     * give the memory back.  A short query is answered from the word list's
+     * table again the next time it is typed.
+     */
+    public void releaseCaches() {
+        mGuessCache.clear();
+        mShortPrefixGuesses.clear();
+    }
+
+    /*
+     * The word now has the highest rank, so it goes to the front of the
+     * tables for the short queries that match it.  For a query this short,
+     * a character matches itself, and a base letter also matches its
+     * variants (e.g., alef matches alef with madda).  Queries not yet in the
+     * table find the word when they are searched.  The lists may have been
+     * returned by guess, so they are replaced rather than changed.
+     */
+    private void updateShortPrefixGuesses(String word) {
+        final int length = Math.min(word.length(), MAX_SHORT_PREFIX_LENGTH);
+        for( int i = 0; i < length; i++ ) {
+            if( !PersianCharClass.isValid(word.charAt(i)) ) {
+                return;
+            }
+        }
+
+        char[] query = new char[length];
+        for( int mask = 0; mask < (1 << length); mask++ ) {
+            // Each bit of the mask chooses the character or its base letter.
+            boolean isDistinct = true;
+            for( int i = 0; i < length; i++ ) {
+                char c = word.charAt(i);
+                if( (mask & (1 << i)) != 0 ) {
+                    char base = PersianCharClass.indexToChar(PersianCharClass.getFoldIndex(c));
+                    isDistinct &= (base != c);
+                    c = base;
+                }
+                query[i] = c;
+            }
+            if( !isDistinct ) {
+                // Same as a query with a lower mask.
+                continue;
+            }
+            for( int end = 1; end <= length; end++ ) {
+                if( (end < length) && ((mask >> end) != 0) ) {
+                    // This prefix was handled under a lower mask.
+                    continue;
+                }
+                String prefix = new String(query, 0, end);
+                ArrayList<String> tableList = mShortPrefixGuesses.get(prefix);
+                if( tableList == null ) {
+                    continue;
+                }
+                ArrayList<String> guessList = new ArrayList<String>(tableList);
+                guessList.remove(word);
+                guessList.add(0, word);
+                if( guessList.size() > MAX_RETURNED_GUESSES ) {
+                    guessList.remove(guessList.size() - 1);
+                }
+                mShortPrefixGuesses.put(prefix, guessList);
+            }
+        }
+    }
+
+    /*
+     * The word now has the highest rank, so it goes to the front of the
+     * cached guesses which contain it.  A cached query which the word might
+     * match but which does not contain it is dropped, to be searched again.
+     * As with the short queries, the lists are replaced rather than changed.
+     */
+    private void updateCachedGuesses(String word) {
+        String foldedWord = fold(word);
+        Iterator<Map.Entry<String,ArrayList<String>>> iterator = mGuessCache.entrySet().iterator();
+        while( iterator.hasNext() ) {
+            Map.Entry<String,ArrayList<String>> entry = iterator.next();
+            if( !foldedWord.startsWith(fold(entry.getKey())) ) {
+                continue;
+            }
+            int position = entry.getValue().indexOf(word);
+            if( position >= 0 ) {
+                ArrayList<String> guessList = new ArrayList<String>(entry.getValue());
+                guessList.remove(position);
+                guessList.add(0, word);
+                entry.setValue(guessList);
+            } else {
+                iterator.remove();
+            }
+        }
+    }
+
+    /*
+     * Fold the variant letters of a word to their base letter, and drop any
+     * zero-width non-joiners, so that a query may be compared with the words
+     * it could match.
+     */
+    private static String fold(String word) {
+        StringBuilder folded = new StringBuilder(word.length());
+        for( int i = 0; i < word.length(); i++ ) {
+            int index = PersianCharClass.getFoldIndex(word.charAt(i));
+            if( index == -1 ) {
+                folded.append(word.charAt(i));
+            } else if( index != PersianCharClass.INDEX_ZWNJ ) {
+                folded.append(PersianCharClass.indexToChar(index));
+            }
+        }
+        return folded.toString();
+    }
+
+    /*
+     * Returns the count most likely extensions of the word by one character,
+     * judging by how many words follow each character, most likely first.
+     * Extensions whose guesses are already cached are left out.
+     */
+    public ArrayList<String> getLikelyNextPrefixes(String word, int count) {
+        ArrayList<String> prefixes = new ArrayList<String>(count);
+        int shard = getShardIndex(word);
+        if( (shard == -1) || (mShardTries[shard] == null) ) {
+            return prefixes;
+        }
+
+        // Add up the weights of the children in the dictionary and in the
+        // user's words.
+        int[] weights = new int[NUM_VALID_CHARACTERS];
+        addChildWeights(mShardTries[shard], word, weights);
+        addChildWeights(getUserWordTrie(), word, weights);
+
+        // Select the heaviest children, without sorting all of them.
+        for( int n = 0; n < count; n++ ) {
+            int best = -1;
+            for( int i = 0; i < NUM_VALID_CHARACTERS; i++ ) {
+                if( (weights[i] > 0) && ((best == -1) || (weights[i] > weights[best])) ) {
+                    best = i;
+                }
+            }
+            if( best == -1 ) {
+                break;
+            }
+            weights[best] = 0;
+            String prefix = word + PersianCharClass.indexToChar(best);
+            Map<String,ArrayList<String>> cache =
+                (prefix.length() > MAX_SHORT_PREFIX_LENGTH) ? mGuessCache : mShortPrefixGuesses;
+            if( !cache.containsKey(prefix) ) {
+                prefixes.add(prefix);
+            }
+        }
+        return prefixes;
+    }
+
+    private static void addChildWeights(TrieIndex trie, String word, int[] weights) {
+        int node = trie.find(word);
+        if( node == TrieIndex.NO_NODE ) {
+            return;
+        }
+        int childCount = trie.getChildCount(node);
+        for( int i = 0; i < childCount; i++ ) {
+            weights[trie.getChildIndex(node, i)] += trie.getWeight(trie.getChildAt(node, i));
+        }
+    }
+
+    /*
+     * Returns the guesses for the word, best first.  The list may be shared
+     * with later calls, so it must not be modified; the guesser itself
+     * never changes a list once it has been returned.
+     */
+    public ArrayList<String> guess(String word) {
+        int shard = getShardIndex(word);
+        if( shard == -1 ) {
+            return new ArrayList<String>();
+        }
+        loadShard(shard);
+
+        if( word.length() <= MAX_SHORT_PREFIX_LENGTH ) {
+            ArrayList<String> tableList = mShortPrefixGuesses.get(word);
+            if( tableList == null ) {
+                tableList = searchShortPrefix(word);
+                mShortPrefixGuesses.put(word, tableList);
+            }
+            return tableList;
+        }
+
+        ArrayList<String> cachedList = mGuessCache.get(word);
+        if( cachedList != null ) {
+            return cachedList;
+        }
+        ArrayList<String> guessList = search(word);
+        mGuessCache.put(word, guessList);
+        return guessList;
+    }
+
+    /*
+     * Add the guesses which complete the word as a known word with suffixes,
+     * trying the longest known word first.  The word must have been typed
+     * past the known word, so that a word typed in full is completed from
+     * the dictionary before any suffixes are guessed.
+     */
+    private void guessSuffixes(GuessSet guessSet, String word) {
+        int maxSize = Math.min(guessSet.size() + MAX_SUFFIX_GUESSES, MAX_TOTAL_GUESSES);
+        for( int i = word.length() - 1; (i >= MIN_SUFFIXED_WORD_LENGTH) && (guessSet.size() < maxSize); i-- ) {
+            String stem = word.substring(0, i);
+            int rank = getWordRank(stem);
+            if( rank != -1 ) {
+                PersianSuffixAutomaton.guess(stem, rank, word, guessSet, maxSize);
+            }
+        }
+    }
+
+    private ArrayList<String> search(String word) {
+        // First, get the guesses along with their ranks.
+        // The user's words go first, so that they are never crowded out.
+        GuessSet guessSet = new GuessSet();
+        guess(getUserWordTrie(), guessSet, word);
+        if( !hasInvalidCharacters(word) ) {
+            mVerbGenerator.guess(word, guessSet);
+            guessSuffixes(guessSet, word);
+        }
+        int shard = getShardIndex(word);
+        if( shard != -1 ) {
+            guess(mShardTries[shard], guessSet, word);
+        }
+
+        // Now, return the best of them, up to a maximum of MAX_RETURNED_GUESSES.
+        return guessSet.getBest(MAX_RETURNED_GUESSES);
+    }
+
+    /*
+     * As search, for a query of one or two characters, but with the
+     * dictionary words taken from the word list's table for the query, which
+     * are already in the order the search would find them.
+     */
+    private ArrayList<String> searchShortPrefix(String word) {
+        GuessSet guessSet = new GuessSet();
+        guess(getUserWordTrie(), guessSet, word);
+        if( !hasInvalidCharacters(word) ) {
+            mVerbGenerator.guess(word, guessSet);
+        }
+        int[] ids = mWordList.getShortPrefixIds(word);
+        for( int i = 0; i < ids.length; i++ ) {
+            guessSet.add(mWordList.getWord(ids[i]), mWordList.getRank(ids[i]));
+        }
+        return guessSet.getBest(MAX_RETURNED_GUESSES);
+    }
+
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.util.ArrayList;
+
+/**
+ * Decodes Persian typed in Latin letters ("Pinglish").  Each group of
+ * letters may stand for several Persian letters (e.g., "s" for seen, sad or
+ * theh, and "kh" for khah), and short vowels are often not written, so the
+ * typed letters form a lattice of Persian spellings.
+ *
+ * The lattice is searched against the dictionary tries as it is typed: after
+ * each letter, the spellings ending there are extended from the spellings
+ * kept at the positions before it, those which are not the start of a word
+ * are dropped, and only the BEAM_WIDTH best are kept.  A spelling is scored
+ * by how likely its transliteration is and by how common the words it leads
+ * to are.
+ */
+class PinglishDecoder {
+
+    // The number of spellings kept at each position.
+    static final int BEAM_WIDTH = 16;
+    // How many of the best spellings are completed with the guesser.
+    static final int COMPLETED_SPELLINGS = 3;
+
+    // The score, in rank buckets, of each unit of transliteration cost, and
+    // of the logarithm of the number of words a spelling leads to.
+    private static final int RANK_PER_COST = 24;
+    private static final int RANK_PER_LOG_WEIGHT = 8;
+
+    // Where in a word a transliteration applies.
+    private static final int ANYWHERE = 0;
+    private static final int INITIAL = 1;
+    private static final int MEDIAL = 2;
+
+    /*
+     * The transliterations, as parallel arrays: the Latin letters, the
+     * Persian letters they stand for, the cost, and where in a word they
+     * apply.  An upper case letter matches its lower case transliterations
+     * too, at an extra cost.  A short vowel in the middle of a word may be
+     * left out.
+     */
+    private static final String[] LATIN = {
+        // Consonants.
+        "b", "p", "t", "t", "T", "s", "s", "s", "S", "j", "ch", "h", "h", "H", "kh", "x", "x", "d",
+        "z", "z", "z", "z", "Z", "Z", "r", "zh", "sh", "gh", "gh", "q", "q", "f", "k", "c", "g",
+        "l", "m", "n", "v", "w", "y", "'", "'",
+
+        // Vowels at the start of a word are carried by alef.
+        "a", "a", "a", "aa", "e", "e", "o", "o", "o", "i", "i", "u", "ou", "oo", "ee",
+
+        // Vowels elsewhere.  The short vowels are usually not written.
+        "a", "a", "a", "aa", "e", "e", "e", "e", "o", "o", "i", "ee", "u", "oo", "ou",
+    };
+    private static final String[] PERSIAN = {
+        // Consonants.
+        "\u0628",       // b: beh
+        "\u067E",       // p: peh
+        "\u062A",       // t: teh
+        "\u0637",       // t: tah
+        "\u0637",       // T: tah
+        "\u0633",       // s: seen
+        "\u0635",       // s: sad
+        "\u062B",       // s: theh
+        "\u0635",       // S: sad
+        "\u062C",       // j: jeem
+        "\u0686",       // ch: tcheh
+        "\u0647",       // h: heh
+        "\u062D",       // h: hah
+        "\u062D",       // H: hah
+        "\u062E",       // kh: khah
+        "\u062E",       // x: khah
+        "\u06A9\u0633", // x: keheh seen
+        "\u062F",       // d: dal
+        "\u0632",       // z: zain
+        "\u0630",       // z: thal
+        "\u0636",       // z: dad
+        "\u0638",       // z: zah
+        "\u0636",       // Z: dad
+        "\u0638",       // Z: zah
+        "\u0631",       // r: reh
+        "\u0698",       // zh: jeh
+        "\u0634",       // sh: sheen
+        "\u063A",       // gh: ghain
+        "\u0642",       // gh: qaf
+        "\u0642",       // q: qaf
+        "\u063A",       // q: ghain
+        "\u0641",       // f: feh
+        "\u06A9",       // k: keheh
+        "\u06A9",       // c: keheh
+        "\u06AF",       // g: gaf
+        "\u0644",       // l: lam
+        "\u0645",       // m: meem
+        "\u0646",       // n: noon
+        "\u0648",       // v: waw
+        "\u0648",       // w: waw
+        "\u06CC",       // y: yeh
+        "\u0639",       // ': ain
+        "\u0621",       // ': hamza
+
+        // Vowels at the start of a word are carried by alef.
+        "\u0627",       // a: alef
+        "\u0622",       // a: alef with madda
+        "\u0639",       // a: ain
+        "\u0622",       // aa: alef with madda
+        "\u0627",       // e: alef
+        "\u0639",       // e: ain
+        "\u0627",       // o: alef
+        "\u0627\u0648", // o: alef waw
+        "\u0639",       // o: ain
+        "\u0627\u06CC", // i: alef yeh
+        "\u0627",       // i: alef
+        "\u0627\u0648", // u: alef waw
+        "\u0627\u0648", // ou: alef waw
+        "\u0627\u0648", // oo: alef waw
+        "\u0627\u06CC", // ee: alef yeh
+
+        // Vowels elsewhere.  The short vowels are usually not written.
+        "",             // a: nothing
+        "\u0627",       // a: alef
+        "\u0639",       // a: ain
+        "\u0627",       // aa: alef
+        "",             // e: nothing
+        "\u0647",       // e: heh
+        "\u06CC",       // e: yeh
+        "\u0639",       // e: ain
+        "",             // o: nothing
+        "\u0648",       // o: waw
+        "\u06CC",       // i: yeh
+        "\u06CC",       // ee: yeh
+        "\u0648",       // u: waw
+        "\u0648",       // oo: waw
+        "\u0648",       // ou: waw
+    };
+    private static final int[] COSTS = {
+        // Consonants.
+        0, 0, 0, 2, 0, 0, 2, 3, 0, 0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 2, 2, 3, 0, 0, 0, 0, 0, 0, 0, 0, 1,
+        0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 2,
+
+        // Vowels at the start of a word are carried by alef.
+        0, 1, 2, 0, 0, 2, 0, 2, 2, 0, 2, 0, 0, 0, 0,
+
+        // Vowels elsewhere.  The short vowels are usually not written.
+        0, 1, 3, 0, 0, 1, 3, 3, 0, 1, 0, 0, 0, 0, 0,
+    };
+    private static final int[] POSITIONS = {
+        // Consonants.
+        ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE,
+        ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE,
+        ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE,
+        ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE,
+        ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE, ANYWHERE,
+
+        // Vowels at the start of a word are carried by alef.
+        INITIAL, INITIAL, INITIAL, INITIAL, INITIAL, INITIAL, INITIAL, INITIAL, INITIAL, INITIAL,
+        INITIAL, INITIAL, INITIAL, INITIAL, INITIAL,
+
+        // Vowels elsewhere.  The short vowels are usually not written.
+        MEDIAL, MEDIAL, MEDIAL, MEDIAL, MEDIAL, MEDIAL, MEDIAL, MEDIAL, MEDIAL, MEDIAL, MEDIAL,
+        MEDIAL, MEDIAL, MEDIAL, MEDIAL,
+    };
+
+    /**
+     * A Persian spelling of the letters typed so far, and where it has got
+     * to in a trie.  The empty spelling, at the start, has no trie.
+     */
+    private static final class Spelling {
+        final String text;
+        final TrieIndex trie;
+        final int node;
+        final int cost;
+        final int score;
+
+        Spelling(String text, TrieIndex trie, int node, int cost) {
+            this.text = text;
+            this.trie = trie;
+            this.node = node;
+            this.cost = cost;
+            this.score = computeScore(trie, node, cost);
+        }
+    }
+
+    private final PersianWordGuesser mGuesser;
+    private final StringBuilder mLatin = new StringBuilder();
+    // The spellings kept at each position, best first.
+    private final ArrayList<ArrayList<Spelling>> mBeams = new ArrayList<ArrayList<Spelling>>();
+
+    PinglishDecoder(PersianWordGuesser guesser) {
+        mGuesser = guesser;
+        clear();
+    }
+
+    /**
+     * Returns the number of Latin letters typed.
+     */
+    int length() {
+        return mLatin.length();
+    }
+
+    String getLatin() {
+        return mLatin.toString();
+    }
+
+    void clear() {
+        mLatin.setLength(0);
+        mBeams.clear();
+        ArrayList<Spelling> start = new ArrayList<Spelling>();
+        start.add(new Spelling("", null, TrieIndex.NO_NODE, 0));
+        mBeams.add(start);
+    }
+
+    /**
+     * Add a typed letter, and work out the spellings which end with it.
+     */
+    void append(char latin) {
+        mLatin.append(latin);
+        final int end = mLatin.length();
+        ArrayList<Spelling> beam = new ArrayList<Spelling>();
+        for (int i = 0; i < LATIN.length; i++) {
+            final String letters = LATIN[i];
+            final int start = end - letters.length();
+            if (start < 0) {
+                continue;
+            }
+            final int where = POSITIONS[i];
+            if ((where == INITIAL && start != 0) || (where == MEDIAL && start == 0)) {
+                continue;
+            }
+            final int caseCost = matchLetters(letters, start);
+            if (caseCost == -1) {
+                continue;
+            }
+            final String persian = PERSIAN[i];
+            final int cost = COSTS[i] + caseCost;
+            ArrayList<Spelling> previous = mBeams.get(start);
+            for (int j = 0; j < previous.size(); j++) {
+                extend(previous.get(j), persian, cost, beam);
+            }
+        }
+        sortAndTrim(beam);
+        mBeams.add(beam);
+    }
+
+    /**
+     * Remove the last typed letter.
+     */
+    void removeLast() {
+        if (mLatin.length() > 0) {
+            mLatin.setLength(mLatin.length() - 1);
+            mBeams.remove(mBeams.size() - 1);
+        }
+    }
+
+    /**
+     * Returns up to max Persian words for what has been typed, best first:
+     * the whole words spelled by it, and then completions of the best
+     * spellings.
+     */
+    ArrayList<String> getCandidates(int max) {
+        ArrayList<String> candidates = new ArrayList<String>();
+        ArrayList<Spelling> beam = mBeams.get(mBeams.size() - 1);
+        for (int i = 0; i < beam.size() && candidates.size() < max; i++) {
+            Spelling spelling = beam.get(i);
+            if (spelling.trie != null && spelling.trie.isTerminal(spelling.node)
+                    && !candidates.contains(spelling.text)) {
+                candidates.add(spelling.text);
+            }
+        }
+        for (int i = 0; i < beam.size() && i < COMPLETED_SPELLINGS && candidates.size() < max; i++) {
+            ArrayList<String> guesses = mGuesser.guess(beam.get(i).text);
+            for (int j = 0; j < guesses.size() && candidates.size() < max; j++) {
+                if (!candidates.contains(guesses.get(j))) {
+                    candidates.add(guesses.get(j));
+                }
+            }
+        }
+        return candidates;
+    }
+
+    // Returns the extra cost of matching the typed letters from start, or -1
+    // if they do not match.
+    private int matchLetters(String letters, int start) {
+        int cost = 0;
+        for (int i = 0; i < letters.length(); i++) {
+            final char typed = mLatin.charAt(start + i);
+            final char letter = letters.charAt(i);
+            if (typed != letter) {
+                if (Character.isLowerCase(letter) && Character.toLowerCase(typed) == letter) {
+                    cost = 1;
+                } else {
+                    return -1;
+                }
+            }
+        }
+        return cost;
+    }
+
+    // Add the spelling followed by the Persian letters to the beam, in each
+    // trie where that is the start of a word.
+    private void extend(Spelling spelling, String persian, int cost, ArrayList<Spelling> beam) {
+        if (persian.length() == 0) {
+            if (spelling.trie != null) {
+                addToBeam(new Spelling(spelling.text, spelling.trie, spelling.node, spelling.cost + cost), beam);
+            }
+            return;
+        }
+        if (spelling.trie == null) {
+            // The first letter chooses the dictionary shard.
+            TrieIndex trie = mGuesser.getDictionaryTrie(persian.charAt(0));
+            if (trie != null) {
+                walk(trie, trie.getRoot(), "", persian, 0, cost, beam);
+            }
+            trie = mGuesser.getUserWordTrie();
+            walk(trie, trie.getRoot(), "", persian, 0, cost, beam);
+        } else {
+            walk(spelling.trie, spelling.node, spelling.text, persian, 0, spelling.cost + cost, beam);
+        }
+    }
+
+    // Follow the Persian letters from the node, allowing a zero-width
+    // non-joiner before any of them.
+    private void walk(TrieIndex trie, int node, String text, String persian, int i, int cost,
+            ArrayList<Spelling> beam) {
+        if (i == persian.length()) {
+            addToBeam(new Spelling(text, trie, node, cost), beam);
+            return;
+        }
+        final char c = persian.charAt(i);
+        final int child = trie.getChild(node, PersianCharClass.getTrieIndex(c));
+        if (child != TrieIndex.NO_NODE) {
+            walk(trie, child, text + c, persian, i + 1, cost, beam);
+        }
+        final int zwnjChild = trie.getChild(node, PersianCharClass.INDEX_ZWNJ);
+        if (zwnjChild != TrieIndex.NO_NODE) {
+            final int afterZwnj = trie.getChild(zwnjChild, PersianCharClass.getTrieIndex(c));
+            if (afterZwnj != TrieIndex.NO_NODE) {
+                walk(trie, afterZwnj, text + ZwnjRules.ZWNJ + c, persian, i + 1, cost + 1, beam);
+            }
+        }
+    }
+
+    // Add the spelling, unless the beam has a better one at the same node.
+    private static void addToBeam(Spelling spelling, ArrayList<Spelling> beam) {
+        for (int i = 0; i < beam.size(); i++) {
+            Spelling other = beam.get(i);
+            if (other.trie == spelling.trie && other.node == spelling.node) {
+                if (spelling.score < other.score) {
+                    beam.set(i, spelling);
+                }
+                return;
+            }
+        }
+        beam.add(spelling);
+    }
+
+    // Sort the beam, best (lowest score) first, and keep the best BEAM_WIDTH.
+    private static void sortAndTrim(ArrayList<Spelling> beam) {
+        for (int i = 1; i < beam.size(); i++) {
+            Spelling spelling = beam.get(i);
+            int j = i;
+            while (j > 0 && beam.get(j - 1).score > spelling.score) {
+                beam.set(j, beam.get(j - 1));
+                j--;
+            }
+            beam.set(j, spelling);
+        }
+        while (beam.size() > BEAM_WIDTH) {
+            beam.remove(beam.size() - 1);
+        }
+    }
+
+    // Lower is better.  A whole word scores by its rank, and the start of a
+    // word by how many words it leads to.
+    private static int computeScore(TrieIndex trie, int node, int cost) {
+        if (trie == null) {
+            return cost * RANK_PER_COST;
+        }
+        int bonus = (int) (RANK_PER_LOG_WEIGHT * Math.log(Math.max(1, trie.getWeight(node))));
+        if (trie.isTerminal(node)) {
+            bonus = Math.max(bonus, Math.min(trie.getRank(node), PackedWordList.MAX_RANK + 1));
+        }
+        return cost * RANK_PER_COST - bonus;
+    }
+}
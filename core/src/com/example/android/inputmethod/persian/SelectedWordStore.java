@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.util.List;
+
+/**
+ * Where the guesser keeps the words the user has selected, so that they are
+ * remembered when the input method is started again.
+ */
+public interface SelectedWordStore {
+
+    /**
+     * Returns the words saved, least recently selected first, or an empty
+     * list if none have been.
+     */
+    List<String> load();
+
+    /**
+     * Replace the words saved with the given words, in the same order.
+     */
+    void save(List<String> words);
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+/**
+ * A read-only trie of ranked words, in which a node is referred to by an
+ * int handle.  The characters of the words are given by their trie index
+ * (see PersianCharClass), and the children of a node are in order of it.
+ */
+interface TrieIndex {
+    int NO_NODE = -1;
+
+    int getRoot();
+
+    boolean isTerminal(int node);
+
+    /**
+     * Returns the rank of the word ending at the node, which must be
+     * terminal.  Higher is better.
+     */
+    int getRank(int node);
+
+    /**
+     * Returns the number of words in the subtree of the node.
+     */
+    int getWeight(int node);
+
+    int getChildCount(int node);
+
+    /**
+     * Returns the trie index of the character leading to the i-th child.
+     */
+    int getChildIndex(int node, int i);
+
+    int getChildAt(int node, int i);
+
+    /**
+     * Returns the child for the character with the given trie index, or
+     * NO_NODE.
+     */
+    int getChild(int node, int index);
+
+    /**
+     * Returns the node reached by following s exactly, or NO_NODE.
+     */
+    int find(CharSequence s);
+}
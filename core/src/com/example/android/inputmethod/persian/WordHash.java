@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A minimal perfect hash of the words in a PackedWordList, which finds the
+ * id of a word in constant time without decoding any of the list.
+ *
+ * The words are hashed into buckets of two on average, and each bucket
+ * stores a displacement which sends its words to free slots of a table with
+ * exactly one slot per word (hash and displace).  A bucket with only one word
+ * stores the slot itself.  Each slot holds the id of its word and a 16-bit
+ * fingerprint of it, so a word which is not in the list is only mistaken for
+ * one with a chance of 1 in 65536.
+ *
+ * Finding the displacements takes a while for a large list, so the hash is
+ * built when the dictionary is packed and stored with it (see
+ * PackedWordList.writeTo).
+ */
+final class WordHash {
+    private static final int WORDS_PER_BUCKET = 2;
+    // How many displacements to try for a bucket before starting again with
+    // a different seed, and how many seeds to try.
+    private static final int MAX_DISPLACEMENT = 1 << 16;
+    private static final int MAX_SEEDS = 32;
+
+    private final long mSeed;
+    private final int[] mDisplacements;
+    private final int[] mIds;
+    private final char[] mFingerprints;
+
+    private WordHash(long seed, int[] displacements, int[] ids, char[] fingerprints) {
+        mSeed = seed;
+        mDisplacements = displacements;
+        mIds = ids;
+        mFingerprints = fingerprints;
+    }
+
+    /**
+     * Returns the id of the word in the list, or -1 if it is not there.
+     */
+    int lookup(CharSequence word) {
+        if (mIds.length == 0) {
+            return -1;
+        }
+        final long hash = hash(word, mSeed);
+        final int displacement = mDisplacements[getBucket(hash, mDisplacements.length)];
+        final int slot = displacement < 0 ? -displacement - 1 : getSlot(hash, displacement, mIds.length);
+        return mFingerprints[slot] == getFingerprint(hash) ? mIds[slot] : -1;
+    }
+
+    private static long hash(CharSequence word, long seed) {
+        long hash = seed;
+        for (int i = 0; i < word.length(); i++) {
+            hash = (hash ^ word.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    // Scramble the bits, so that each bit of the result depends on all of
+    // the input.
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+        x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return x ^ (x >>> 33);
+    }
+
+    private static int getBucket(long hash, int bucketCount) {
+        return (int) ((hash >>> 32) % bucketCount);
+    }
+
+    private static int getSlot(long hash, int displacement, int slotCount) {
+        return (int) ((mix(hash + displacement * 0x9E3779B97F4A7C15L) >>> 1) % slotCount);
+    }
+
+    private static char getFingerprint(long hash) {
+        return (char) hash;
+    }
+
+    /**
+     * Build the hash of the first count words, whose ids are their
+     * positions.  The words must all be different.
+     */
+    static WordHash build(String[] words, int count) {
+        long seed = 0xCBF29CE484222325L;
+        for (int attempt = 0; attempt < MAX_SEEDS; attempt++) {
+            WordHash wordHash = build(words, count, seed);
+            if (wordHash != null) {
+                return wordHash;
+            }
+            seed = mix(seed + attempt + 1);
+        }
+        throw new IllegalStateException("No perfect hash found for " + count + " words");
+    }
+
+    // Returns null if some bucket could not be placed with this seed.
+    private static WordHash build(String[] words, int count, long seed) {
+        final int bucketCount = Math.max(1, count / WORDS_PER_BUCKET);
+        long[] hashes = new long[count];
+        for (int i = 0; i < count; i++) {
+            hashes[i] = hash(words[i], seed);
+        }
+
+        // Group the words by bucket.
+        int[] bucketStarts = new int[bucketCount + 1];
+        for (int i = 0; i < count; i++) {
+            bucketStarts[getBucket(hashes[i], bucketCount) + 1]++;
+        }
+        int maxBucketSize = 0;
+        for (int b = 0; b < bucketCount; b++) {
+            maxBucketSize = Math.max(maxBucketSize, bucketStarts[b + 1]);
+            bucketStarts[b + 1] += bucketStarts[b];
+        }
+        int[] bucketWords = new int[count];
+        int[] fill = new int[bucketCount];
+        for (int i = 0; i < count; i++) {
+            final int b = getBucket(hashes[i], bucketCount);
+            bucketWords[bucketStarts[b] + fill[b]++] = i;
+        }
+
+        // Place the largest buckets first, while the table is emptiest.
+        int[] order = new int[bucketCount];
+        int[] sizeStarts = new int[maxBucketSize + 2];
+        for (int b = 0; b < bucketCount; b++) {
+            sizeStarts[maxBucketSize - (bucketStarts[b + 1] - bucketStarts[b]) + 1]++;
+        }
+        for (int s = 0; s <= maxBucketSize; s++) {
+            sizeStarts[s + 1] += sizeStarts[s];
+        }
+        for (int b = 0; b < bucketCount; b++) {
+            order[sizeStarts[maxBucketSize - (bucketStarts[b + 1] - bucketStarts[b])]++] = b;
+        }
+
+        int[] displacements = new int[bucketCount];
+        int[] ids = new int[count];
+        char[] fingerprints = new char[count];
+        boolean[] used = new boolean[count];
+        int[] slots = new int[maxBucketSize];
+        int nextFree = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            final int b = order[i];
+            final int start = bucketStarts[b];
+            final int size = bucketStarts[b + 1] - start;
+            if (size == 0) {
+                break;
+            }
+
+            if (size == 1) {
+                // Put the word in any free slot.
+                while (used[nextFree]) {
+                    nextFree++;
+                }
+                displacements[b] = -nextFree - 1;
+                slots[0] = nextFree;
+            } else {
+                int displacement = 0;
+                boolean placed = false;
+                while (!placed && displacement < MAX_DISPLACEMENT) {
+                    placed = true;
+                    for (int j = 0; j < size && placed; j++) {
+                        final int slot = getSlot(hashes[bucketWords[start + j]], displacement, count);
+                        placed = !used[slot];
+                        for (int k = 0; k < j && placed; k++) {
+                            placed = slots[k] != slot;
+                        }
+                        slots[j] = slot;
+                    }
+                    if (!placed) {
+                        displacement++;
+                    }
+                }
+                if (!placed) {
+                    return null;
+                }
+                displacements[b] = displacement;
+            }
+
+            for (int j = 0; j < size; j++) {
+                final int id = bucketWords[start + j];
+                used[slots[j]] = true;
+                ids[slots[j]] = id;
+                fingerprints[slots[j]] = getFingerprint(hashes[id]);
+            }
+        }
+        return new WordHash(seed, displacements, ids, fingerprints);
+    }
+
+    /**
+     * Write the hash: the seed, the number of buckets and of words, the
+     * displacements, and then the id and fingerprint of each slot.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(mSeed);
+        out.writeInt(mDisplacements.length);
+        out.writeInt(mIds.length);
+        for (int i = 0; i < mDisplacements.length; i++) {
+            out.writeInt(mDisplacements[i]);
+        }
+        for (int i = 0; i < mIds.length; i++) {
+            out.writeInt(mIds[i]);
+        }
+        for (int i = 0; i < mFingerprints.length; i++) {
+            out.writeChar(mFingerprints[i]);
+        }
+    }
+
+    /**
+     * Read a hash written by writeTo.
+     */
+    static WordHash readFrom(DataInputStream in) throws IOException {
+        final long seed = in.readLong();
+        int[] displacements = new int[in.readInt()];
+        final int count = in.readInt();
+        int[] ids = new int[count];
+        char[] fingerprints = new char[count];
+        for (int i = 0; i < displacements.length; i++) {
+            displacements[i] = in.readInt();
+        }
+        for (int i = 0; i < count; i++) {
+            ids[i] = in.readInt();
+        }
+        for (int i = 0; i < count; i++) {
+            fingerprints[i] = in.readChar();
+        }
+        return new WordHash(seed, displacements, ids, fingerprints);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+/**
+ * Where a zero-width non-joiner may be left out when typing.  The rules act
+ * as a transducer from what is typed to what is in the dictionary, which
+ * inserts a zero-width non-joiner (without reading a character) at a
+ * boundary they match, and copies everything else.  The search follows it
+ * alongside the trie, so the non-joiner is only inserted where the trie has
+ * one.
+ *
+ * A boundary matches after one of the PREFIXES, when it is all that has been
+ * matched so far, or before one of the SUFFIXES, when the rest of what was
+ * typed starts with it and at least MIN_STEM_LENGTH characters have been
+ * matched.
+ */
+final class ZwnjRules {
+
+    static final char ZWNJ = '\u200C';
+
+    private static final String[] PREFIXES = {
+        "\u0645\u06CC",         // mi- (verbs)
+        "\u0646\u0645\u06CC",   // nemi- (verbs)
+        "\u0628\u06CC",         // bi- (without)
+    };
+
+    private static final String[] SUFFIXES = {
+        "\u0647\u0627",         // -ha (plural)
+        "\u0627\u06CC",         // -i (after silent heh)
+        "\u0627\u0645",         // -am (after silent heh)
+        "\u0627\u0634",         // -ash (after silent heh)
+        "\u0627\u062A",         // -at (after silent heh)
+        "\u0627\u0633\u062A",   // ast (copula)
+        "\u062A\u0631",         // -tar (comparative), and -tarin
+    };
+
+    private static final int MIN_STEM_LENGTH = 2;
+
+    private ZwnjRules() {
+    }
+
+    /**
+     * Whether a zero-width non-joiner may be inserted after the first
+     * pathLength characters of the path, which have been matched so far,
+     * and before the rest of the query, from the given position.
+     */
+    static boolean isImplied(char[] path, int pathLength, String query, int position) {
+        if (position >= query.length() || query.charAt(position) == ZWNJ
+                || (pathLength > 0 && path[pathLength - 1] == ZWNJ)) {
+            return false;
+        }
+        for (int i = 0; i < PREFIXES.length; i++) {
+            if (pathLength == PREFIXES[i].length() && startsWith(path, PREFIXES[i])) {
+                return true;
+            }
+        }
+        if (pathLength >= MIN_STEM_LENGTH) {
+            for (int i = 0; i < SUFFIXES.length; i++) {
+                if (query.startsWith(SUFFIXES[i], position)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(char[] path, String prefix) {
+        for (int i = 0; i < prefix.length(); i++) {
+            if (path[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
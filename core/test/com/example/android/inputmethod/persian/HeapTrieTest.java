@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HeapTrieTest {
+
+    @Test
+    public void matchesThePackedTrieAsWordsAreAdded() {
+        final int count = 5000;
+        String[] words = TestWords.randomWords(count, 2901);
+        HeapTrie heapTrie = new HeapTrie();
+        for (int i = 0; i < count; i++) {
+            heapTrie.put(words[i], i);
+            if (i == count / 10 || i == count - 1) {
+                PackedTrie packedTrie = PackedTrie.build(words, TestWords.positions(count), i + 1, false);
+                LoudsTrieTest.assertSameNodes(packedTrie, packedTrie.getRoot(), heapTrie, heapTrie.getRoot());
+            }
+        }
+    }
+
+    @Test
+    public void putGivesAWordItsNewRank() {
+        // salaam, salaamat.
+        String word = "\u0633\u0644\u0627\u0645";
+        HeapTrie heapTrie = new HeapTrie();
+        heapTrie.put(word, 3);
+        heapTrie.put(word + "\u062A", 4);
+        heapTrie.put(word, 9);
+        assertEquals(2, heapTrie.getWeight(heapTrie.getRoot()));
+        assertEquals(9, heapTrie.getRank(heapTrie.find(word)));
+        assertFalse(heapTrie.isTerminal(heapTrie.find("\u0633\u0644")));
+        assertEquals(TrieIndex.NO_NODE, heapTrie.find("\u0633\u0645"));
+    }
+
+    @Test
+    public void nodesStayValidAsWordsAreAdded() {
+        String[] words = TestWords.randomWords(2000, 2902);
+        HeapTrie heapTrie = new HeapTrie();
+        heapTrie.put(words[0], 0);
+        final int node = heapTrie.find(words[0]);
+        for (int i = 1; i < words.length; i++) {
+            heapTrie.put(words[i], i);
+        }
+        assertEquals(node, heapTrie.find(words[0]));
+        assertTrue(heapTrie.isTerminal(node));
+        assertEquals(0, heapTrie.getRank(node));
+    }
+}
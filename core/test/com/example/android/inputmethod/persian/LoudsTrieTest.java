@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LoudsTrieTest {
+
+    @Test
+    public void matchesThePackedTrie() {
+        final int count = 5000;
+        String[] words = TestWords.randomWords(count, 2901);
+        // Ranks as the dictionary quantizes them, so that many are shared.
+        int[] ranks = new int[count];
+        for (int i = 0; i < count; i++) {
+            ranks[i] = PackedWordList.quantizeRank(i, count);
+        }
+        PackedTrie packedTrie = PackedTrie.build(words, ranks, count, false);
+        LoudsTrie loudsTrie = LoudsTrie.build(words, ranks, count);
+
+        assertEquals(count, packedTrie.getWeight(packedTrie.getRoot()));
+        assertSameNodes(packedTrie, packedTrie.getRoot(), loudsTrie, loudsTrie.getRoot());
+
+        for (int i = 0; i < count; i++) {
+            final int node = loudsTrie.find(words[i]);
+            assertTrue(words[i], node != TrieIndex.NO_NODE);
+            assertTrue(loudsTrie.isTerminal(node));
+            assertEquals(ranks[i], loudsTrie.getRank(node));
+        }
+    }
+
+    @Test
+    public void keepsTheHighestRankOfARepeatedWord() {
+        // salaam, beh, salaam.
+        String[] words = { "\u0633\u0644\u0627\u0645", "\u0628", "\u0633\u0644\u0627\u0645" };
+        int[] ranks = { 7, 3, 5 };
+        LoudsTrie loudsTrie = LoudsTrie.build(words, ranks, words.length);
+        assertEquals(2, loudsTrie.getWeight(loudsTrie.getRoot()));
+        assertEquals(7, loudsTrie.getRank(loudsTrie.find(words[0])));
+        assertEquals(TrieIndex.NO_NODE, loudsTrie.find("\u0633\u0644\u0645")); // salm
+    }
+
+    @Test
+    public void getChildFindsOnlyTheChildren() {
+        final int count = 2000;
+        String[] words = TestWords.randomWords(count, 2902);
+        PackedTrie packedTrie = PackedTrie.build(words, TestWords.positions(count), count, false);
+        LoudsTrie loudsTrie = LoudsTrie.build(words, TestWords.positions(count), count);
+        Random random = new Random(2901);
+        for (int n = 0; n < 200; n++) {
+            String word = words[random.nextInt(count)];
+            int packedNode = packedTrie.getRoot();
+            int loudsNode = loudsTrie.getRoot();
+            for (int i = 0; i < word.length(); i++) {
+                for (int index = 0; index < PersianCharClass.NUM_VALID_CHARACTERS; index++) {
+                    assertEquals(packedTrie.getChild(packedNode, index) == TrieIndex.NO_NODE,
+                            loudsTrie.getChild(loudsNode, index) == TrieIndex.NO_NODE);
+                }
+                final int index = PersianCharClass.getTrieIndex(word.charAt(i));
+                packedNode = packedTrie.getChild(packedNode, index);
+                loudsNode = loudsTrie.getChild(loudsNode, index);
+            }
+            assertTrue(loudsTrie.isTerminal(loudsNode));
+        }
+    }
+
+    // Walk both tries together, checking that every node is the same.
+    static void assertSameNodes(TrieIndex expected, int expectedNode, TrieIndex actual, int actualNode) {
+        assertEquals(expected.isTerminal(expectedNode), actual.isTerminal(actualNode));
+        if (expected.isTerminal(expectedNode)) {
+            assertEquals(expected.getRank(expectedNode), actual.getRank(actualNode));
+        }
+        assertEquals(expected.getWeight(expectedNode), actual.getWeight(actualNode));
+        final int childCount = expected.getChildCount(expectedNode);
+        assertEquals(childCount, actual.getChildCount(actualNode));
+        for (int i = 0; i < childCount; i++) {
+            final int index = expected.getChildIndex(expectedNode, i);
+            assertEquals(index, actual.getChildIndex(actualNode, i));
+            assertEquals(actual.getChildAt(actualNode, i), actual.getChild(actualNode, index));
+            assertSameNodes(expected, expected.getChildAt(expectedNode, i), actual, actual.getChildAt(actualNode, i));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PackedWordListTest {
+    private static final int COUNT = 3000;
+
+    private String[] mWords;
+    private PackedWordList mWordList;
+
+    @Before
+    public void setUp() {
+        mWords = TestWords.randomWords(COUNT, 2901);
+        mWordList = PackedWordList.build(mWords, TestWords.positions(COUNT), COUNT);
+    }
+
+    @Test
+    public void packsEveryWordInTrieOrder() {
+        assertEquals(COUNT, mWordList.size());
+        HashMap<String,Integer> ranks = new HashMap<String,Integer>();
+        for (int i = 0; i < COUNT; i++) {
+            ranks.put(mWords[i], Integer.valueOf(PackedWordList.quantizeRank(i, COUNT)));
+        }
+        String previous = null;
+        for (int id = 0; id < mWordList.size(); id++) {
+            final String word = mWordList.getWord(id);
+            assertEquals(word, ranks.get(word).intValue(), mWordList.getRank(id));
+            if (previous != null) {
+                assertTrue(PackedWordList.compareWords(previous, word) < 0);
+            }
+            previous = word;
+        }
+    }
+
+    @Test
+    public void readerDecodesFromAnyId() {
+        Random random = new Random(2901);
+        StringBuilder word = new StringBuilder();
+        for (int n = 0; n < 100; n++) {
+            final int start = random.nextInt(COUNT);
+            PackedWordList.Reader reader = mWordList.new Reader(start);
+            for (int id = start; id < Math.min(COUNT, start + 2 * PackedWordList.BLOCK_SIZE); id++) {
+                word.setLength(0);
+                assertTrue(reader.next(word));
+                assertEquals(mWordList.getWord(id), word.toString());
+            }
+        }
+        PackedWordList.Reader reader = mWordList.new Reader(COUNT - 1);
+        assertTrue(reader.next(word));
+        assertFalse(reader.next(word));
+    }
+
+    @Test
+    public void roundTripsThroughItsFile() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        mWordList.writeTo(new DataOutputStream(bytes));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(PackedWordList.MAGIC, in.readInt());
+        PackedWordList readList = PackedWordList.readFrom(in);
+        assertEquals(-1, in.read());
+
+        assertEquals(mWordList.size(), readList.size());
+        for (int id = 0; id < mWordList.size(); id++) {
+            assertEquals(mWordList.getWord(id), readList.getWord(id));
+            assertEquals(mWordList.getRank(id), readList.getRank(id));
+            assertEquals(id, readList.getWordHash().lookup(mWordList.getWord(id)));
+        }
+        for (int i = 0; i < PersianCharClass.NUM_VALID_CHARACTERS; i++) {
+            for (int j = -1; j < PersianCharClass.NUM_VALID_CHARACTERS; j++) {
+                String prefix = shortPrefix(i, j);
+                assertArrayEquals(prefix, mWordList.getShortPrefixIds(prefix), readList.getShortPrefixIds(prefix));
+            }
+        }
+    }
+
+    @Test
+    public void shortPrefixTablesMatchTheSearch() {
+        String[] words = new String[mWordList.size()];
+        int[] ranks = new int[mWordList.size()];
+        for (int id = 0; id < words.length; id++) {
+            words[id] = mWordList.getWord(id);
+            ranks[id] = mWordList.getRank(id);
+        }
+        TrieIndex trie = PackedTrie.build(words, ranks, words.length, false);
+
+        int found = 0;
+        for (int i = 0; i < PersianCharClass.NUM_VALID_CHARACTERS; i++) {
+            for (int j = -1; j < PersianCharClass.NUM_VALID_CHARACTERS; j++) {
+                String prefix = shortPrefix(i, j);
+                int[] ids = mWordList.getShortPrefixIds(prefix);
+                List<String> guesses = PersianWordGuesser.searchDictionary(trie, prefix);
+                assertEquals(prefix, guesses.size(), ids.length);
+                for (int k = 0; k < ids.length; k++) {
+                    assertEquals(guesses.get(k), mWordList.getWord(ids[k]));
+                }
+                found += ids.length;
+            }
+        }
+        assertTrue(found > 0);
+        assertEquals(0, mWordList.getShortPrefixIds("\u0633\u0644\u0627").length); // sal
+        assertEquals(0, mWordList.getShortPrefixIds("a").length);
+    }
+
+    @Test
+    public void leavesOutInvalidWordsAndKeepsTheHighestRank() {
+        // salaam, nothing, Latin letters, salaam again, and beh.
+        String[] words = { "\u0633\u0644\u0627\u0645", "", "abc", "\u0633\u0644\u0627\u0645", "\u0628" };
+        PackedWordList wordList = PackedWordList.build(words, TestWords.positions(words.length), words.length);
+        assertEquals(2, wordList.size());
+        assertEquals("\u0628", wordList.getWord(0));
+        assertEquals("\u0633\u0644\u0627\u0645", wordList.getWord(1));
+        assertEquals(PackedWordList.quantizeRank(3, words.length), wordList.getRank(1));
+    }
+
+    private static String shortPrefix(int first, int second) {
+        String prefix = String.valueOf(PersianCharClass.indexToChar(first));
+        return second < 0 ? prefix : prefix + PersianCharClass.indexToChar(second);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class PersianSuffixAutomatonTest {
+    private static final int RANK = 100;
+
+    private static final String KETAB = "\u06A9\u062A\u0627\u0628";       // book
+    private static final String KHANE = "\u062E\u0627\u0646\u0647";       // house
+    private static final String DANESHJU = "\u062F\u0627\u0646\u0634\u062C\u0648";  // student
+    private static final String DERAKHT = "\u062F\u0631\u062E\u062A";     // tree
+
+    @Test
+    public void joinsSuffixesAfterAConsonant() {
+        assertEquals("\u06A9\u062A\u0627\u0628\u0645", complete(KETAB, "\u06A9\u062A\u0627\u0628\u0645").get(0));
+        assertEquals("\u062F\u0631\u062E\u062A\u0627\u0646", complete(DERAKHT, "\u062F\u0631\u062E\u062A\u0627\u0646").get(0));
+        // The plural -ha always follows a zero-width non-joiner.
+        assertEquals("\u06A9\u062A\u0627\u0628\u200C\u0647\u0627", complete(KETAB, "\u06A9\u062A\u0627\u0628\u0647\u0627").get(0));
+    }
+
+    @Test
+    public void addsZwnjAndAlefAfterASilentHeh() {
+        assertEquals("\u062E\u0627\u0646\u0647\u200C\u0627\u0645", complete(KHANE, "\u062E\u0627\u0646\u0647\u0627\u0645").get(0));
+        assertEquals("\u062E\u0627\u0646\u0647\u200C\u0627\u0645", complete(KHANE, "\u062E\u0627\u0646\u0647\u200C\u0627\u0645").get(0));
+        assertEquals("\u062E\u0627\u0646\u0647\u200C\u0627\u06CC", complete(KHANE, "\u062E\u0627\u0646\u0647\u0627\u06CC").get(0));
+        // -an is only taken after a consonant.
+        assertTrue(complete(KHANE, "\u062E\u0627\u0646\u0647\u0627\u0646").isEmpty());
+    }
+
+    @Test
+    public void addsYehAfterAVowel() {
+        assertEquals("\u062F\u0627\u0646\u0634\u062C\u0648\u06CC\u0645", complete(DANESHJU, "\u062F\u0627\u0646\u0634\u062C\u0648\u06CC\u0645").get(0));
+        assertEquals("\u062F\u0627\u0646\u0634\u062C\u0648\u0633\u062A", complete(DANESHJU, "\u062F\u0627\u0646\u0634\u062C\u0648\u0633\u062A").get(0));
+        assertTrue(complete(DANESHJU, "\u062F\u0627\u0646\u0634\u062C\u0648\u0645").isEmpty());
+    }
+
+    @Test
+    public void followsAPluralWithAPossessive() {
+        // ketab-ha-yam: after -ha, which ends in alef, -am takes a yeh.
+        assertEquals("\u06A9\u062A\u0627\u0628\u200C\u0647\u0627\u06CC\u0645", complete(KETAB, "\u06A9\u062A\u0627\u0628\u0647\u0627\u06CC\u0645").get(0));
+        assertEquals("\u062F\u0631\u062E\u062A\u0627\u0646\u0634", complete(DERAKHT, "\u062F\u0631\u062E\u062A\u0627\u0646\u0634").get(0));
+        // But not a possessive with a plural.
+        assertTrue(complete(KETAB, "\u06A9\u062A\u0627\u0628\u0645\u0647\u0627").isEmpty());
+    }
+
+    @Test
+    public void completesASuffixThatIsPartlyTyped() {
+        List<String> forms = complete(KETAB, "\u06A9\u062A\u0627\u0628\u0647");
+        assertTrue(forms.toString(), forms.contains("\u06A9\u062A\u0627\u0628\u200C\u0647\u0627"));
+        assertFalse(forms.toString(), forms.contains("\u06A9\u062A\u0627\u0628\u0645"));
+        // The suffixed forms rank below the word.
+        PersianWordGuesser.GuessSet guessSet = new PersianWordGuesser.GuessSet();
+        PersianSuffixAutomaton.guess(KETAB, RANK, "\u06A9\u062A\u0627\u0628\u0647\u0627", guessSet, PersianWordGuesser.MAX_TOTAL_GUESSES);
+        assertTrue(guessSet.getRank("\u06A9\u062A\u0627\u0628\u200C\u0647\u0627") < RANK);
+    }
+
+    private static List<String> complete(String word, String query) {
+        PersianWordGuesser.GuessSet guessSet = new PersianWordGuesser.GuessSet();
+        PersianSuffixAutomaton.guess(word, RANK, query, guessSet, PersianWordGuesser.MAX_TOTAL_GUESSES);
+        return guessSet.getBest(PersianWordGuesser.MAX_TOTAL_GUESSES);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PersianVerbGeneratorTest {
+    private PersianWordGuesser mGuesser;
+
+    @Before
+    public void setUp() {
+        // No dictionary, so that only the verb forms are found.
+        mGuesser = TestWords.newGuesser();
+    }
+
+    @After
+    public void tearDown() {
+        PersianWordGuesser.unloadDictionary();
+    }
+
+    @Test
+    public void generatesEveryFormOfTheCommonVerbs() {
+        int count = 0;
+        for (String[] root : PersianVerbGenerator.COMMON_ROOTS) {
+            for (String form : expand(root[0], root[1], root[2])) {
+                assertTrue(form, mGuesser.getRank(form) != -1);
+                assertTrue(form, mGuesser.guess(form).contains(form));
+                count++;
+            }
+        }
+        assertTrue(count > 0);
+    }
+
+    @Test
+    public void maddaVerbsTakeJoinedPrefixes() {
+        // miayad, biavarid, nayavard.
+        String[] forms = { "\u0645\u06CC\u0627\u06CC\u062F", "\u0628\u06CC\u0627\u0648\u0631\u06CC\u062F", "\u0646\u06CC\u06CC\u0627\u0648\u0631\u062F" };
+        for (String form : forms) {
+            assertTrue(form, mGuesser.isKnownWord(form));
+        }
+        // Not with the zero-width non-joiner: mi-ayad.
+        assertFalse(mGuesser.isKnownWord("\u0645\u06CC\u200C\u0622\u06CC\u062F"));
+        // Without a prefix the madda is kept, and may be typed as alef: amad.
+        assertTrue(mGuesser.isKnownWord("\u0622\u0645\u062F"));
+        assertTrue(mGuesser.guess("\u0627\u0645\u062F").contains("\u0622\u0645\u062F"));
+    }
+
+    @Test
+    public void bareFormsDropAFinalYeh() {
+        // bia, from the present stem ay, and the endings after it: biai, biam.
+        String[] forms = { "\u0628\u06CC\u0627", "\u0628\u06CC\u0627\u06CC", "\u0628\u06CC\u0627\u0645" };
+        for (String form : forms) {
+            assertTrue(form, mGuesser.isKnownWord(form));
+        }
+        assertTrue(mGuesser.guess("\u0628\u06CC").contains("\u0628\u06CC\u0627"));
+        // The endings before it keep the yeh: biayand.
+        assertTrue(mGuesser.isKnownWord("\u0628\u06CC\u0627\u06CC\u0646\u062F"));
+    }
+
+    /*
+     * The forms of a verb, as the old addVerbRoot and addVerbRootHelper
+     * added them to the dictionary, but with no forms of a missing
+     * colloquial stem, and keeping the madda of the past stem when it has no
+     * prefix.
+     */
+    private static List<String> expand(String pastStem, String presentStem, String colloquialPresentStem) {
+        String mi = "\u0645\u06CC\u200C";
+        String nemi = "\u0646\u0645\u06CC\u200C";
+        String be = "\u0628";
+        String na = "\u0646";
+        String barePastStem = pastStem;
+        if (pastStem.charAt(0) == '\u0622') {
+            mi = "\u0645\u06CC";
+            nemi = "\u0646\u0645\u06CC";
+            be = "\u0628\u06CC";
+            na = "\u0646\u06CC\u06CC";
+            pastStem = "\u0627" + pastStem.substring(1);
+            presentStem = "\u0627" + presentStem.substring(1);
+            if (colloquialPresentStem != null) {
+                colloquialPresentStem = "\u0627" + colloquialPresentStem.substring(1);
+            }
+        }
+
+        List<String> forms = new ArrayList<String>();
+        addForms(forms, nemi, pastStem, false, true);
+        addForms(forms, na, pastStem, false, true);
+        addForms(forms, nemi, presentStem, true, true);
+        addForms(forms, nemi, colloquialPresentStem, false, false);
+        addForms(forms, mi, pastStem, false, true);
+        addForms(forms, "", barePastStem, false, true);
+        addForms(forms, na, presentStem, true, true);
+        addForms(forms, na, colloquialPresentStem, false, false);
+        addForms(forms, be, presentStem, true, true);
+        addForms(forms, be, colloquialPresentStem, false, false);
+        addForms(forms, mi, presentStem, true, false);
+        addForms(forms, mi, colloquialPresentStem, false, false);
+        return forms;
+    }
+
+    private static void addForms(List<String> forms, String prefix, String stem, boolean adEnding,
+            boolean bareEnding) {
+        if (stem == null) {
+            return;
+        }
+        forms.add(prefix + stem + "\u0646\u062F");         // -nd
+        forms.add(prefix + stem + "\u06CC\u062F");         // -id
+        forms.add(prefix + stem + "\u06CC\u0645");         // -im
+        if (adEnding || stem.charAt(stem.length() - 1) == '\u0627') {
+            forms.add(prefix + stem + "\u062F");           // -ad
+        } else {
+            forms.add(prefix + stem + "\u0647");           // -e
+        }
+        if (bareEnding) {
+            if (stem.charAt(stem.length() - 1) == '\u06CC') {
+                stem = stem.substring(0, stem.length() - 1);
+            }
+            forms.add(prefix + stem);                      // -(nothing)
+        }
+        forms.add(prefix + stem + "\u06CC");               // -i
+        forms.add(prefix + stem + "\u0645");               // -am
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PersianWordGuesserTest {
+    private static final int COUNT = 5000;
+
+    private String[] mWords;
+    private WordListSource mWordListSource;
+    private TestWords.MemoryWordStore mSelectedWordStore;
+
+    @Before
+    public void setUp() {
+        PersianWordGuesser.unloadDictionary();
+        mWords = TestWords.randomWords(COUNT, 2901);
+        mWordListSource = TestWords.rawSource(mWords);
+        mSelectedWordStore = new TestWords.MemoryWordStore();
+    }
+
+    @After
+    public void tearDown() {
+        PersianWordGuesser.unloadDictionary();
+    }
+
+    @Test
+    public void knowsTheDictionaryWords() {
+        PersianWordGuesser guesser = newGuesser();
+        for (int i = 0; i < COUNT; i += 10) {
+            assertTrue(mWords[i], guesser.isKnownWord(mWords[i]));
+        }
+        assertFalse(guesser.isKnownWord(newWord("\u0698"))); // zheh is not in the words
+    }
+
+    @Test
+    public void selectedWordComesFirst() {
+        PersianWordGuesser guesser = newGuesser();
+        String word = longWord(new Random(2901));
+        List<String> queries = getQueries(word);
+        for (String query : queries) {
+            guesser.guess(query);
+        }
+        guesser.selectWord(word);
+        for (String query : queries) {
+            assertEquals(query, word, guesser.guess(query).get(0));
+        }
+
+        // A word that is not in the dictionary is learned too.
+        String newWord = newWord(word.substring(0, 3));
+        guesser.selectWord(newWord);
+        assertTrue(guesser.isKnownWord(newWord));
+        for (String query : getQueries(newWord)) {
+            if (query.length() <= 3) {
+                assertEquals(query, newWord, guesser.guess(query).get(0));
+            }
+        }
+    }
+
+    @Test
+    public void guessesAfterSelectingWordsMatchAFreshGuesser() {
+        PersianWordGuesser guesser = newGuesser();
+        Random random = new Random(2901);
+        List<String> queries = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            queries.addAll(getQueries(longWord(random)));
+        }
+        // Fill the short-query lists and the cache.
+        for (String query : queries) {
+            guesser.guess(query);
+        }
+
+        // Select words the cached guesses contain, and words they do not.
+        for (int i = 0; i < queries.size(); i += 7) {
+            List<String> guesses = guesser.guess(queries.get(i));
+            if (guesses.size() > 0) {
+                guesser.selectWord(guesses.get(guesses.size() - 1));
+            }
+            if (queries.get(i).length() > 1) {
+                guesser.selectWord(newWord(queries.get(i)));
+            }
+        }
+        List<List<String>> updated = new ArrayList<List<String>>();
+        for (String query : queries) {
+            updated.add(new ArrayList<String>(guesser.guess(query)));
+        }
+
+        // A new guesser, which restores the same words, searches from scratch.
+        guesser.saveState();
+        PersianWordGuesser.unloadDictionary();
+        PersianWordGuesser freshGuesser = newGuesser();
+        for (int i = 0; i < queries.size(); i++) {
+            assertEquals(queries.get(i), freshGuesser.guess(queries.get(i)), updated.get(i));
+        }
+    }
+
+    @Test
+    public void unloadingForgetsWordsThatWereNotSaved() {
+        PersianWordGuesser guesser = newGuesser();
+        String word = newWord(longWord(new Random(2904)).substring(0, 2));
+        guesser.guess(word.substring(0, 1));
+        guesser.selectWord(word);
+        assertEquals(word, guesser.guess(word.substring(0, 1)).get(0));
+
+        PersianWordGuesser.unloadDictionary();
+        PersianWordGuesser freshGuesser = newGuesser();
+        assertFalse(freshGuesser.isKnownWord(word));
+        assertFalse(freshGuesser.guess(word.substring(0, 1)).contains(word));
+    }
+
+    @Test
+    public void savesEachSelectedWordOnceMostRecentLast() {
+        PersianWordGuesser guesser = newGuesser();
+        String first = newWord("\u0628");
+        String second = newWord("\u067E");
+        // The most common dictionary word is not added when first selected.
+        String top = mWords[COUNT - 1];
+        guesser.selectWord(top);
+        guesser.selectWord(first);
+        guesser.selectWord(second);
+        guesser.selectWord(first);
+        guesser.selectWord(top);
+        guesser.saveState();
+        assertEquals(Arrays.asList(second, first, top), mSelectedWordStore.load());
+    }
+
+    @Test
+    public void guessesAreTheSameAfterReleasingCaches() {
+        PersianWordGuesser guesser = newGuesser();
+        List<String> queries = getQueries(longWord(new Random(2903)));
+        guesser.selectWord(queries.get(queries.size() - 1));
+        List<List<String>> cached = new ArrayList<List<String>>();
+        for (String query : queries) {
+            cached.add(guesser.guess(query));
+        }
+        guesser.releaseCaches();
+        guesser.releaseAllShards();
+        for (int i = 0; i < queries.size(); i++) {
+            assertEquals(queries.get(i), cached.get(i), guesser.guess(queries.get(i)));
+        }
+    }
+
+    @Test
+    public void succinctTriesGuessTheSame() {
+        PersianWordGuesser guesser = newGuesser();
+        List<String> queries = new ArrayList<String>();
+        Random random = new Random(2902);
+        for (int i = 0; i < 20; i++) {
+            queries.addAll(getQueries(longWord(random)));
+        }
+        List<List<String>> packed = new ArrayList<List<String>>();
+        for (String query : queries) {
+            packed.add(guesser.guess(query));
+        }
+        guesser.setUseSuccinctTries(true);
+        try {
+            for (int i = 0; i < queries.size(); i++) {
+                assertEquals(queries.get(i), packed.get(i), guesser.guess(queries.get(i)));
+            }
+        } finally {
+            guesser.setUseSuccinctTries(false);
+        }
+    }
+
+    private PersianWordGuesser newGuesser() {
+        return new PersianWordGuesser(mWordListSource, mSelectedWordStore);
+    }
+
+    // A dictionary word of at least four letters.
+    private String longWord(Random random) {
+        String word;
+        do {
+            word = mWords[random.nextInt(COUNT)];
+        } while (word.length() < 4 || word.indexOf(' ') >= 0);
+        return word;
+    }
+
+    // A word which starts with the given letters and is not in the dictionary.
+    private String newWord(String start) {
+        return start + "\u0698\u0698"; // zheh
+    }
+
+    // The starts of the word, as typed and with the diacritics left out.
+    private static List<String> getQueries(String word) {
+        List<String> queries = new ArrayList<String>();
+        for (int length = 1; length <= word.length(); length++) {
+            String query = word.substring(0, length);
+            queries.add(query);
+            StringBuilder folded = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                folded.append(PersianCharClass.indexToChar(PersianCharClass.getFoldIndex(query.charAt(i))));
+            }
+            if (!folded.toString().equals(query)) {
+                queries.add(folded.toString());
+            }
+        }
+        return queries;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PhraseCursorTest {
+    private static final int MAX = PersianWordGuesser.MAX_PHRASE_GUESSES;
+
+    private PersianWordGuesser mGuesser;
+
+    @Before
+    public void setUp() {
+        // Least common first.
+        mGuesser = TestWords.newGuesser(
+            "\u0628\u0647 \u062E\u0627\u0646\u0647\u200C\u0647\u0627",        // to the houses
+            "\u0645\u06CC\u200C\u0631\u0648\u062F \u0628\u0647 \u062E\u0627\u0646\u0647",    // goes home
+            "\u0622\u0628 \u0648 \u0647\u0648\u0627",          // weather
+            "\u0631\u0648\u0632 \u0628\u0647 \u0631\u0648\u0632",        // day by day
+            "\u062E\u06CC\u0644\u06CC \u0622\u0633\u0627\u0646",         // very easy
+            "\u062E\u06CC\u0644\u06CC \u062E\u0648\u0634\u200C\u062D\u0627\u0644",      // very happy
+            "\u062E\u06CC\u0644\u06CC \u062E\u0648\u0628",          // very good
+            "\u06A9\u062A\u0627\u0628");             // book
+    }
+
+    @After
+    public void tearDown() {
+        PersianWordGuesser.unloadDictionary();
+    }
+
+    @Test
+    public void startsOnlyWherePhrasesDo() {
+        assertNull(mGuesser.startPhrase("\u06A9\u062A\u0627\u0628"));
+        assertNull(mGuesser.startPhrase("\u062E\u06CC\u0644"));
+        assertNotNull(mGuesser.startPhrase("\u062E\u06CC\u0644\u06CC"));
+    }
+
+    @Test
+    public void followsTheWordBeingTyped() {
+        PersianWordGuesser.PhraseCursor cursor = mGuesser.startPhrase("\u062E\u06CC\u0644\u06CC");
+        assertTrue(cursor.setComposing(""));
+        assertEquals(Arrays.asList("\u062E\u06CC\u0644\u06CC \u062E\u0648\u0628", "\u062E\u06CC\u0644\u06CC \u062E\u0648\u0634\u200C\u062D\u0627\u0644", "\u062E\u06CC\u0644\u06CC \u0622\u0633\u0627\u0646"), cursor.getPhrases(MAX));
+        assertTrue(cursor.setComposing("\u062E\u0648"));
+        assertEquals(Arrays.asList("\u062E\u06CC\u0644\u06CC \u062E\u0648\u0628", "\u062E\u06CC\u0644\u06CC \u062E\u0648\u0634\u200C\u062D\u0627\u0644"), cursor.getPhrases(MAX));
+        assertTrue(cursor.setComposing("\u062E\u0648\u0628"));
+        assertEquals(Arrays.asList("\u062E\u06CC\u0644\u06CC \u062E\u0648\u0628"), cursor.getPhrases(MAX));
+        assertFalse(cursor.setComposing("\u062E\u0648\u0628\u06CC"));
+        assertTrue(cursor.getPhrases(MAX).isEmpty());
+        // Deleting a character goes back.
+        assertTrue(cursor.setComposing("\u062E\u0648"));
+        assertEquals(2, cursor.getPhrases(MAX).size());
+    }
+
+    @Test
+    public void commitsSeveralWords() {
+        PersianWordGuesser.PhraseCursor cursor = mGuesser.startPhrase("\u0631\u0648\u0632");
+        assertEquals("\u0631\u0648\u0632 ", cursor.getPhrase());
+        assertTrue(cursor.commit("\u0628\u0647"));
+        assertEquals("\u0631\u0648\u0632 \u0628\u0647 ", cursor.getPhrase());
+        assertTrue(cursor.setComposing("\u0631"));
+        assertEquals(Arrays.asList("\u0631\u0648\u0632 \u0628\u0647 \u0631\u0648\u0632"), cursor.getPhrases(MAX));
+        assertFalse(cursor.commit("\u062E\u0627\u0646\u0647"));
+    }
+
+    @Test
+    public void matchesVowelVariants() {
+        // The committed words stay as typed.
+        PersianWordGuesser.PhraseCursor cursor = mGuesser.startPhrase("\u0627\u0628");
+        assertNotNull(cursor);
+        assertTrue(cursor.setComposing(""));
+        assertEquals(Arrays.asList("\u0627\u0628 \u0648 \u0647\u0648\u0627"), cursor.getPhrases(MAX));
+
+        cursor = mGuesser.startPhrase("\u062E\u06CC\u0644\u06CC");
+        assertTrue(cursor.setComposing("\u0627\u0633"));
+        assertEquals(Arrays.asList("\u062E\u06CC\u0644\u06CC \u0622\u0633\u0627\u0646"), cursor.getPhrases(MAX));
+    }
+
+    @Test
+    public void insertsZwnjsThatWereLeftOut() {
+        PersianWordGuesser.PhraseCursor cursor = mGuesser.startPhrase("\u0645\u06CC\u0631\u0648\u062F");
+        assertNotNull(cursor);
+        assertTrue(cursor.setComposing("\u0628"));
+        assertEquals(Arrays.asList("\u0645\u06CC\u0631\u0648\u062F \u0628\u0647 \u062E\u0627\u0646\u0647"), cursor.getPhrases(MAX));
+
+        cursor = mGuesser.startPhrase("\u0628\u0647");
+        assertTrue(cursor.setComposing("\u062E\u0627\u0646\u0647"));
+        // The non-joiner is only implied once the whole suffix is typed.
+        assertFalse(cursor.setComposing("\u062E\u0627\u0646\u0647\u0647"));
+        assertTrue(cursor.setComposing("\u062E\u0627\u0646\u0647\u0647\u0627"));
+        assertEquals(Arrays.asList("\u0628\u0647 \u062E\u0627\u0646\u0647\u200C\u0647\u0627"),
+            cursor.getPhrases(MAX));
+    }
+}
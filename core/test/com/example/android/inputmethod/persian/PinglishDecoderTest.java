@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PinglishDecoderTest {
+    private static final String KHANE = "\u062E\u0627\u0646\u0647";
+    private static final String SHAB = "\u0634\u0628";
+    private static final String SHABNAM = "\u0634\u0628\u0646\u0645";
+    private static final String ZHALE = "\u0698\u0627\u0644\u0647";
+    private static final String SIB = "\u0633\u06CC\u0628";
+    private static final String SOBH = "\u0635\u0628\u062D";
+    private static final String SABET = "\u062B\u0627\u0628\u062A";
+    // kohne, which "khane" would spell if k and h were read apart.
+    private static final String KOHNE = "\u06A9\u0647\u0646\u0647";
+
+    private PinglishDecoder mDecoder;
+
+    @Before
+    public void setUp() {
+        // Most common last.
+        mDecoder = new PinglishDecoder(TestWords.newGuesser(
+                KOHNE, ZHALE, SIB, SOBH, SABET, SHAB, KHANE, SHABNAM));
+    }
+
+    @After
+    public void tearDown() {
+        PersianWordGuesser.unloadDictionary();
+    }
+
+    @Test
+    public void readsKhShAndZhAsOneLetter() {
+        assertEquals(KHANE, decode("khane").get(0));
+        assertEquals(SHAB, decode("shab").get(0));
+        assertEquals(ZHALE, decode("zhale").get(0));
+    }
+
+    @Test
+    public void sGivesSeenSadAndTheh() {
+        List<String> candidates = decode("s");
+        assertTrue(candidates.toString(), candidates.contains(SIB));
+        assertTrue(candidates.toString(), candidates.contains(SOBH));
+        assertTrue(candidates.toString(), candidates.contains(SABET));
+    }
+
+    @Test
+    public void wholeWordsComeBeforeCompletions() {
+        // shabnam is more common, but only completes what was typed.
+        List<String> candidates = decode("shab");
+        assertEquals(SHAB, candidates.get(0));
+        assertTrue(candidates.indexOf(SHABNAM) > 0);
+    }
+
+    @Test
+    public void removeLastRestoresThePreviousBeam() {
+        List<String> before = decode("kha");
+        mDecoder.append('n');
+        mDecoder.append('e');
+        mDecoder.removeLast();
+        mDecoder.removeLast();
+        assertEquals("kha", mDecoder.getLatin());
+        assertEquals(3, mDecoder.length());
+        assertEquals(before, mDecoder.getCandidates(PersianWordGuesser.MAX_RETURNED_GUESSES));
+
+        // And typing on from there finds the same word as before.
+        mDecoder.append('n');
+        mDecoder.append('e');
+        assertEquals(KHANE, mDecoder.getCandidates(PersianWordGuesser.MAX_RETURNED_GUESSES).get(0));
+    }
+
+    private List<String> decode(String latin) {
+        mDecoder.clear();
+        for (int i = 0; i < latin.length(); i++) {
+            mDecoder.append(latin.charAt(i));
+        }
+        return mDecoder.getCandidates(PersianWordGuesser.MAX_RETURNED_GUESSES);
+    }
+}
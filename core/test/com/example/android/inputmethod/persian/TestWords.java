@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random words for the tests: Persian letters, with the hamza and madda
+ * forms of alef, vav and yeh mixed in, and now and then a zero-width
+ * non-joiner or a space inside a word.  Also a store of selected words
+ * kept in memory, and a guesser of given words.
+ */
+final class TestWords {
+
+    private static final String LETTERS =
+            "\u0627\u0627\u0628\u067E\u062A\u062C\u0686\u062E\u062F\u0631"
+            + "\u0632\u0633\u0634\u0641\u06A9\u06AF\u0644\u0645\u0646\u0648"
+            + "\u0647\u06CC\u06CC\u0622\u0623\u0624\u0626";
+    private static final String SEPARATORS = "\u200C ";
+
+    private TestWords() {
+    }
+
+    /**
+     * Returns count distinct words.  The same seed gives the same words.
+     */
+    static String[] randomWords(int count, long seed) {
+        Random random = new Random(seed);
+        HashSet<String> seen = new HashSet<String>();
+        List<String> words = new ArrayList<String>(count);
+        while (words.size() < count) {
+            final int length = 1 + random.nextInt(8);
+            StringBuilder word = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                if (i > 0 && i < length - 1 && random.nextInt(20) == 0) {
+                    word.append(SEPARATORS.charAt(random.nextInt(SEPARATORS.length())));
+                } else {
+                    word.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+                }
+            }
+            if (seen.add(word.toString())) {
+                words.add(word.toString());
+            }
+        }
+        return words.toArray(new String[count]);
+    }
+
+    /**
+     * Returns the words as a raw dictionary file, most common last.
+     */
+    static WordListSource rawSource(String[] words) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            for (int i = 0; i < words.length; i++) {
+                out.writeUTF(words[i]);
+            }
+            out.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        final byte[] data = bytes.toByteArray();
+        return new WordListSource() {
+            public InputStream open() {
+                return new ByteArrayInputStream(data);
+            }
+        };
+    }
+
+    /**
+     * Returns the ranks of the words in a raw dictionary file, i.e., their
+     * positions.
+     */
+    static int[] positions(int count) {
+        int[] ranks = new int[count];
+        for (int i = 0; i < count; i++) {
+            ranks[i] = i;
+        }
+        return ranks;
+    }
+
+    /**
+     * Returns a new guesser of the words, most common last, which remembers
+     * the selected words in memory.  Any guesser loaded before is unloaded.
+     */
+    static PersianWordGuesser newGuesser(String... words) {
+        PersianWordGuesser.unloadDictionary();
+        return new PersianWordGuesser(rawSource(words), new MemoryWordStore());
+    }
+
+    static final class MemoryWordStore implements SelectedWordStore {
+        private List<String> mWords = new ArrayList<String>();
+
+        public List<String> load() {
+            return new ArrayList<String>(mWords);
+        }
+
+        public void save(List<String> words) {
+            mWords = new ArrayList<String>(words);
+        }
+    }
+}
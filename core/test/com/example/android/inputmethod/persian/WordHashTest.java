@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class WordHashTest {
+
+    @Test
+    public void findsEveryId() {
+        final int count = 5000;
+        String[] words = TestWords.randomWords(count, 2901);
+        PackedWordList wordList = PackedWordList.build(words, TestWords.positions(count), count);
+        WordHash wordHash = wordList.getWordHash();
+        for (int id = 0; id < wordList.size(); id++) {
+            assertEquals(id, wordHash.lookup(wordList.getWord(id)));
+        }
+    }
+
+    @Test
+    public void rejectsWordsNotInTheList() {
+        // The first half of the words are in the list, the rest are not.
+        final int count = 4000;
+        String[] words = TestWords.randomWords(count, 2901);
+        PackedWordList wordList = PackedWordList.build(words, TestWords.positions(count), count / 2);
+        WordHash wordHash = wordList.getWordHash();
+        for (int i = count / 2; i < count; i++) {
+            assertEquals(words[i], -1, wordHash.lookup(words[i]));
+        }
+        assertEquals(-1, wordHash.lookup(""));
+    }
+
+    @Test
+    public void handlesAnEmptyList() {
+        PackedWordList wordList = PackedWordList.build(new String[0], new int[0], 0);
+        assertEquals(-1, wordList.getWordHash().lookup("\u0633\u0644\u0627\u0645")); // salaam
+    }
+}
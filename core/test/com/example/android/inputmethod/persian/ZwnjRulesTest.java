@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZwnjRulesTest {
+    private static final String MIRAVAD = "\u0645\u06CC\u200C\u0631\u0648\u062F";     // goes
+    private static final String NEMIRAVAD = "\u0646\u0645\u06CC\u200C\u0631\u0648\u062F";  // does not go
+    private static final String BIKAR = "\u0628\u06CC\u200C\u06A9\u0627\u0631";       // idle
+    private static final String KETABHA = "\u06A9\u062A\u0627\u0628\u200C\u0647\u0627";    // books
+    private static final String BOZORGTAR = "\u0628\u0632\u0631\u06AF\u200C\u062A\u0631";  // bigger
+    private static final String DELTANG = "\u062F\u0644\u200C\u062A\u0646\u06AF";     // homesick
+
+    private PersianWordGuesser mGuesser;
+
+    @Before
+    public void setUp() {
+        mGuesser = TestWords.newGuesser(DELTANG, BOZORGTAR, KETABHA, BIKAR, NEMIRAVAD, MIRAVAD);
+    }
+
+    @After
+    public void tearDown() {
+        PersianWordGuesser.unloadDictionary();
+    }
+
+    @Test
+    public void insertsItAfterAPrefix() {
+        assertTrue(mGuesser.guess("\u0645\u06CC\u0631\u0648\u062F").contains(MIRAVAD));
+        assertTrue(mGuesser.guess("\u0646\u0645\u06CC\u0631\u0648\u062F").contains(NEMIRAVAD));
+        assertTrue(mGuesser.guess("\u0628\u06CC\u06A9\u0627\u0631").contains(BIKAR));
+    }
+
+    @Test
+    public void insertsItBeforeASuffix() {
+        assertTrue(mGuesser.guess("\u06A9\u062A\u0627\u0628\u0647\u0627").contains(KETABHA));
+        assertTrue(mGuesser.guess("\u0628\u0632\u0631\u06AF\u062A\u0631").contains(BOZORGTAR));
+    }
+
+    @Test
+    public void stillMatchesItWhenTyped() {
+        assertTrue(mGuesser.guess(MIRAVAD).contains(MIRAVAD));
+        assertTrue(mGuesser.guess(KETABHA).contains(KETABHA));
+    }
+
+    @Test
+    public void doesNotInsertItElsewhere() {
+        // tang is not one of the suffixes.
+        assertFalse(mGuesser.guess("\u062F\u0644\u062A\u0646\u06AF").contains(DELTANG));
+    }
+
+    @Test
+    public void needsAStemBeforeASuffix() {
+        // ha after one letter is not a suffix: b-ha.
+        char[] path = { '\u0628' };
+        assertFalse(ZwnjRules.isImplied(path, 1, "\u0628\u0647\u0627", 1));
+        path = new char[] { '\u06A9', '\u062A', '\u0627', '\u0628' };
+        assertTrue(ZwnjRules.isImplied(path, 4, "\u06A9\u062A\u0627\u0628\u0647\u0627", 4));
+        // Nor twice in a row.
+        path = new char[] { '\u06A9', '\u062A', '\u0627', '\u0628', ZwnjRules.ZWNJ };
+        assertFalse(ZwnjRules.isImplied(path, 5, "\u06A9\u062A\u0627\u0628\u0647\u0627", 4));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.util.AbstractList;
+
+/**
+ * A fixed-capacity, double-buffered list of candidates.  The producer fills
+ * the back page and then publishes it, which swaps it with the front page.
+ * The CandidateView only ever reads the front page, so it never sees a
+ * half-filled list, and no list is allocated or copied per keystroke.
+ *
+ * A page handed to the view remains valid until the page after the next one
+ * is published, so the view must be handed each newly published page before
+ * the producer starts filling the following one.  Filling, publishing and
+ * drawing all happen on the UI thread.
+ */
+class CandidateBuffer {
+
+    /**
+     * One side of the buffer.  Pages are read-only lists as far as the view
+     * is concerned; only the owning CandidateBuffer can change them.
+     */
+    static final class Page extends AbstractList<String> {
+        private final String[] mWords;
+        private int mSize;
+
+        private Page(int capacity) {
+            mWords = new String[capacity];
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= mSize) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+            }
+            return mWords[index];
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+
+        private void reset() {
+            // Drop the references so old words can be collected.
+            for (int i = 0; i < mSize; i++) {
+                mWords[i] = null;
+            }
+            mSize = 0;
+        }
+    }
+
+    private final Page[] mPages;
+    private int mFront = 0;
+
+    /**
+     * @param capacity the most words each page can hold
+     */
+    CandidateBuffer(int capacity) {
+        mPages = new Page[] { new Page(capacity), new Page(capacity) };
+    }
+
+    /**
+     * Clears the back page so that it can be filled.
+     */
+    void beginFill() {
+        mPages[1 - mFront].reset();
+    }
+
+    /**
+     * Appends a word to the back page.
+     * @return false if the page is already full and the word was dropped
+     */
+    boolean add(String word) {
+        Page back = mPages[1 - mFront];
+        if (back.mSize == back.mWords.length) {
+            return false;
+        }
+        back.mWords[back.mSize++] = word;
+        return true;
+    }
+
+    /**
+     * Makes the back page the front page, and returns it.
+     */
+    Page publish() {
+        mFront = 1 - mFront;
+        return mPages[mFront];
+    }
+
+    /**
+     * The most recently published page.
+     */
+    Page front() {
+        return mPages[mFront];
+    }
+}
@@ -58,14 +58,13 @@ public class CandidateView extends View {
     private PopupWindow mPreviewPopup;
     private int mCurrentWordIndex;
 
-    private static final int MAX_SUGGESTIONS = 32;
     private static final int SCROLL_PIXELS = 20;
 
     private static final int MSG_REMOVE_PREVIEW = 1;
     private static final int MSG_REMOVE_THROUGH_PREVIEW = 2;
 
-    private int[] mWordWidth = new int[MAX_SUGGESTIONS];
-    private int[] mWordX = new int[MAX_SUGGESTIONS];
+    private final int[] mWordWidth;
+    private final int[] mWordX;
     private int mPopupPreviewX;
     private int mPopupPreviewY;
 
@@ -107,10 +106,12 @@ public class CandidateView extends View {
     /**
      * Construct a CandidateView for showing suggested words for completion.
      * @param context
-     * @param attrs
+     * @param maxSuggestions the most suggestions that will be shown at once
      */
-    public CandidateView(Context context) {
+    public CandidateView(Context context, int maxSuggestions) {
         super(context);
+        mWordWidth = new int[maxSuggestions];
+        mWordX = new int[maxSuggestions];
         mSelectionHighlight = context.getResources().getDrawable(
                 android.R.drawable.list_selector_background);
         mSelectionHighlight.setState(new int[] {
@@ -301,7 +302,11 @@ public class CandidateView extends View {
     public void setSuggestions(List<String> suggestions, boolean completions,
             boolean typedWordValid) {
         clear();
-        if (suggestions != null) {
+        if (suggestions instanceof CandidateBuffer.Page) {
+            // Published pages are not modified while they are displayed,
+            // so there is no need to take a copy.
+            mSuggestions = suggestions;
+        } else if (suggestions != null) {
             mSuggestions = new ArrayList<String>(suggestions);
         }
         mTypedWordValid = typedWordValid;
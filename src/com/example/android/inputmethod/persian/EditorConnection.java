@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import android.inputmethodservice.InputMethodService;
+import android.view.KeyEvent;
+import android.view.inputmethod.CompletionInfo;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputConnection;
+
+/**
+ * Wraps the current InputConnection to cut down on calls into the editor,
+ * each of which is a round-trip to another process.
+ *
+ * The editor's selection and composing region are cached from onStartInput
+ * and onUpdateSelection, so that calls which cannot change anything are
+ * skipped.  All of the edits made while handling one keystroke are grouped
+ * into a single batch edit, which is only opened once the first edit is
+ * actually made.
+ *
+ * A copy of the text around the cursor is kept up to date from our own edits,
+ * and only fetched again from the editor when it reports a selection that
+ * does not match what those edits should have produced.
+ */
+class EditorConnection {
+    private final InputMethodService mService;
+
+    // Nesting depth of beginBatchEdit, and whether the editor has been told.
+    private int mBatchDepth;
+    private InputConnection mBatchConnection;
+
+    // Cached editor state.
+    private int mSelStart = -1;
+    private int mSelEnd = -1;
+    private boolean mHasComposingRegion;
+    private final StringBuilder mComposingText = new StringBuilder();
+
+    // The text around the cursor, and where we expect the start of the
+    // composing region (or the cursor, if there is none) to be.
+    private final SurroundingText mSurroundingText = new SurroundingText();
+    private int mCursor = -1;
+
+    EditorConnection(InputMethodService service) {
+        mService = service;
+    }
+
+    /**
+     * Forget the cached state, and take the initial selection from the editor.
+     */
+    void onStartInput(EditorInfo attribute) {
+        mSelStart = attribute.initialSelStart;
+        mSelEnd = attribute.initialSelEnd;
+        mHasComposingRegion = false;
+        mComposingText.setLength(0);
+        mSurroundingText.invalidate();
+        mCursor = mSelStart;
+    }
+
+    /**
+     * Returns true if the selection has moved other than by our own edits.
+     */
+    boolean onUpdateSelection(int newSelStart, int newSelEnd,
+            int candidatesStart, int candidatesEnd) {
+        final int composingLength = mHasComposingRegion ? mComposingText.length() : 0;
+        final boolean moved = newSelStart != newSelEnd || newSelStart != mCursor + composingLength;
+        if (moved) {
+            // Not the result of our edits, e.g., the user moved the cursor.
+            mSurroundingText.invalidate();
+            mCursor = candidatesStart >= 0 ? candidatesStart : newSelStart;
+        }
+        mSelStart = newSelStart;
+        mSelEnd = newSelEnd;
+        if (candidatesStart < 0 || candidatesEnd < 0) {
+            // The editor has dropped the composing region on its own.
+            mHasComposingRegion = false;
+            mComposingText.setLength(0);
+        }
+        return moved;
+    }
+
+    /**
+     * Returns the text around the cursor, excluding the composing region.
+     * The editor is only asked for it if our copy is out of date.
+     */
+    SurroundingText getSurroundingText() {
+        if (!mSurroundingText.isValid()) {
+            InputConnection ic = mService.getCurrentInputConnection();
+            if (ic != null) {
+                final int composingLength = mHasComposingRegion ? mComposingText.length() : 0;
+                CharSequence before = ic.getTextBeforeCursor(SurroundingText.WINDOW + composingLength, 0);
+                CharSequence after = ic.getTextAfterCursor(SurroundingText.WINDOW, 0);
+                if (before != null && before.length() >= composingLength) {
+                    before = before.subSequence(0, before.length() - composingLength);
+                } else {
+                    before = null;
+                }
+                mSurroundingText.resync(before, after);
+                mCursor = mSelStart - composingLength;
+            }
+        }
+        return mSurroundingText;
+    }
+
+    boolean isConnected() {
+        return mService.getCurrentInputConnection() != null;
+    }
+
+    /**
+     * Start grouping edits.  Calls may be nested; nothing is sent to the
+     * editor unless an edit is made before the matching endBatchEdit.
+     */
+    void beginBatchEdit() {
+        mBatchDepth++;
+    }
+
+    void endBatchEdit() {
+        if (mBatchDepth == 0) {
+            return;
+        }
+        mBatchDepth--;
+        if (mBatchDepth == 0 && mBatchConnection != null) {
+            mBatchConnection.endBatchEdit();
+            mBatchConnection = null;
+        }
+    }
+
+    /**
+     * Returns the connection to make an edit on, opening the editor's batch
+     * edit first if we are inside one of ours.
+     */
+    private InputConnection getConnectionForEdit() {
+        InputConnection ic = mService.getCurrentInputConnection();
+        if (ic != null && mBatchDepth > 0 && mBatchConnection != ic) {
+            if (mBatchConnection != null) {
+                // The editor changed under us; close the old batch.
+                mBatchConnection.endBatchEdit();
+            }
+            ic.beginBatchEdit();
+            mBatchConnection = ic;
+        }
+        return ic;
+    }
+
+    boolean setComposingText(CharSequence text, int newCursorPosition) {
+        if (mHasComposingRegion && newCursorPosition == 1 && contentEquals(mComposingText, text)) {
+            // The editor already shows exactly this.
+            return true;
+        }
+        InputConnection ic = getConnectionForEdit();
+        if (ic == null) {
+            return false;
+        }
+        mComposingText.setLength(0);
+        mComposingText.append(text);
+        mHasComposingRegion = text.length() > 0;
+        if (newCursorPosition != 1) {
+            mSurroundingText.invalidate();
+        }
+        return ic.setComposingText(text, newCursorPosition);
+    }
+
+    /**
+     * Returns the word that ends at the cursor, or null if there is no
+     * composing text and the cursor is not at the end of a word.  The cursor
+     * must not be inside the word.
+     */
+    String getWordBeforeCursor() {
+        if (mHasComposingRegion || mSelStart != mSelEnd) {
+            return null;
+        }
+        SurroundingText surroundingText = getSurroundingText();
+        if (!surroundingText.isValid() || surroundingText.getWordLengthAfter() > 0) {
+            return null;
+        }
+        return surroundingText.getWordBefore();
+    }
+
+    /**
+     * Turn the word returned by getWordBeforeCursor back into composing text.
+     */
+    boolean recomposeWordBeforeCursor(String word) {
+        InputConnection ic = getConnectionForEdit();
+        if (ic == null) {
+            return false;
+        }
+        // The mirror may be stale; only delete what the editor really holds.
+        CharSequence before = ic.getTextBeforeCursor(word.length(), 0);
+        if (before == null || !word.equals(before.toString())) {
+            mSurroundingText.invalidate();
+            return false;
+        }
+        // Before API level 9 there is no setComposingRegion, so replace the
+        // word with the same text as composing text.  The cursor stays put.
+        ic.beginBatchEdit();
+        ic.deleteSurroundingText(word.length(), 0);
+        ic.setComposingText(word, 1);
+        ic.endBatchEdit();
+        mSurroundingText.onDeleteBefore(word.length());
+        mCursor -= word.length();
+        mComposingText.setLength(0);
+        mComposingText.append(word);
+        mHasComposingRegion = true;
+        return true;
+    }
+
+    boolean commitText(CharSequence text, int newCursorPosition) {
+        InputConnection ic = getConnectionForEdit();
+        if (ic == null) {
+            return false;
+        }
+        mHasComposingRegion = false;
+        mComposingText.setLength(0);
+        // The cursor is placed relative to the start or end of the new text.
+        final int cursorOffset = newCursorPosition > 0
+                ? text.length() + newCursorPosition - 1 : newCursorPosition;
+        mCursor += mSurroundingText.onCommit(text, cursorOffset);
+        return ic.commitText(text, newCursorPosition);
+    }
+
+    boolean finishComposingText() {
+        if (!mHasComposingRegion) {
+            return true;
+        }
+        InputConnection ic = getConnectionForEdit();
+        if (ic == null) {
+            return false;
+        }
+        mCursor += mSurroundingText.onCommit(mComposingText, mComposingText.length());
+        mHasComposingRegion = false;
+        mComposingText.setLength(0);
+        return ic.finishComposingText();
+    }
+
+    boolean commitCompletion(CompletionInfo completion) {
+        InputConnection ic = getConnectionForEdit();
+        if (ic == null) {
+            return false;
+        }
+        mHasComposingRegion = false;
+        mComposingText.setLength(0);
+        mSurroundingText.invalidate();
+        return ic.commitCompletion(completion);
+    }
+
+    boolean sendKeyEvent(KeyEvent event) {
+        InputConnection ic = getConnectionForEdit();
+        if (ic == null) {
+            return false;
+        }
+        if (event.getAction() == KeyEvent.ACTION_DOWN) {
+            trackKeyDown(event.getKeyCode());
+        }
+        return ic.sendKeyEvent(event);
+    }
+
+    /**
+     * Update the copy of the surrounding text for the keys we send.
+     */
+    private void trackKeyDown(int keyCode) {
+        if (mHasComposingRegion) {
+            mSurroundingText.invalidate();
+        } else if (keyCode == KeyEvent.KEYCODE_DEL) {
+            mSurroundingText.onDeleteBefore(1);
+            if (mCursor > 0) {
+                mCursor--;
+            }
+        } else if (keyCode == KeyEvent.KEYCODE_ENTER) {
+            mSurroundingText.onCommit("\n", 1);
+            mCursor++;
+        } else if (keyCode >= KeyEvent.KEYCODE_0 && keyCode <= KeyEvent.KEYCODE_9) {
+            mSurroundingText.onCommit(String.valueOf((char) ('0' + keyCode - KeyEvent.KEYCODE_0)), 1);
+            mCursor++;
+        } else {
+            mSurroundingText.invalidate();
+        }
+    }
+
+    private static boolean contentEquals(StringBuilder a, CharSequence b) {
+        final int length = a.length();
+        if (length != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.util.ArrayList;
+
+import android.os.Handler;
+import android.os.Message;
+import android.os.SystemClock;
+
+/**
+ * Uses the idle time between keystrokes to compute the guesses for the
+ * words the user is most likely to type next, so that they are already in
+ * the guesser's cache when the next key arrives.
+ *
+ * Finding the likely next characters, and each guess after that, is run as
+ * a separate message on the UI thread, so a keystroke is never held up by
+ * more than one of them.  The work stops once it has used its budget of CPU
+ * time for the current word.  The budget is only checked between guesses,
+ * so a single slow guess may run past it.  The service sets the budget, and
+ * lowers it when memory is short; with no budget, nothing is prefetched.
+ */
+class GuessPrefetcher extends Handler {
+    private static final int MSG_PREFETCH = 1;
+
+    private final PersianWordGuesser mGuesser;
+
+    // How many next characters to prefetch, and how much CPU time to spend
+    // on them for each word.
+    private final int mPrefetchCount;
+    private long mBudgetMillis;
+
+    // The word to prefetch for, until its next prefixes have been found.
+    private String mWord;
+    private ArrayList<String> mPending;
+    private int mNextPending;
+    private long mTimeUsed;
+
+    GuessPrefetcher(PersianWordGuesser guesser, int prefetchCount, long budgetMillis) {
+        mGuesser = guesser;
+        mPrefetchCount = prefetchCount;
+        mBudgetMillis = budgetMillis;
+    }
+
+    /**
+     * Set the CPU time to spend on each word from the next one on.  A
+     * budget of zero turns prefetching off.
+     */
+    void setBudget(long budgetMillis) {
+        mBudgetMillis = budgetMillis;
+        if (budgetMillis <= 0) {
+            cancel();
+        }
+    }
+
+    /**
+     * Start prefetching for what may follow the word, abandoning any
+     * prefetching for the previous word.
+     */
+    void schedule(String word) {
+        cancel();
+        if (mBudgetMillis <= 0) {
+            return;
+        }
+        mWord = word;
+        mTimeUsed = 0;
+        sendEmptyMessage(MSG_PREFETCH);
+    }
+
+    void cancel() {
+        removeMessages(MSG_PREFETCH);
+        mWord = null;
+        mPending = null;
+    }
+
+    @Override
+    public void handleMessage(Message msg) {
+        switch (msg.what) {
+            case MSG_PREFETCH:
+                final long start = SystemClock.currentThreadTimeMillis();
+                if (mWord != null) {
+                    mPending = mGuesser.getLikelyNextPrefixes(mWord, mPrefetchCount);
+                    mNextPending = 0;
+                    mWord = null;
+                } else if (mPending != null && mNextPending < mPending.size()) {
+                    mGuesser.guess(mPending.get(mNextPending++));
+                } else {
+                    mPending = null;
+                    break;
+                }
+                mTimeUsed += SystemClock.currentThreadTimeMillis() - start;
+                if (mTimeUsed >= mBudgetMillis) {
+                    mPending = null;
+                    break;
+                }
+                // Yield to any input before the next one.
+                sendEmptyMessage(MSG_PREFETCH);
+                break;
+        }
+    }
+}
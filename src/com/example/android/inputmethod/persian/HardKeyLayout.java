@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import android.view.KeyEvent;
+
+/**
+ * Maps the keys of a physical (QWERTY) keyboard to Persian characters.
+ *
+ * A layout is described by a list of rows of the form
+ * { keyCode, normal, shifted, alt, flags }, where a zero for the shifted
+ * character means "same as normal" and a zero for the alt character means
+ * the key is not mapped when Alt is held.  The description is compiled into
+ * flat lookup tables, so mapping a key event is a single array load.
+ */
+class HardKeyLayout {
+
+    // Meta states, used as the column of the lookup table.
+    static final int META_NONE = 0;
+    static final int META_SHIFT = 1;
+    static final int META_ALT = 2;
+    private static final int NUM_META_STATES = 3;
+    // Returned by getMetaIndex for meta combinations that are never mapped.
+    static final int META_UNMAPPED = -1;
+
+    // The character is committed on its own, rather than being added to the
+    // word being composed.
+    static final int FLAG_STANDALONE = 1;
+
+    /**
+     * The ISIRI 2901:1994 layout on a QWERTY keyboard.  "[" and "]" are
+     * treated as Alt-V and Alt-B, and ";" and "'" as Alt-J and Alt-L.
+     */
+    static final int[][] ISIRI_2901_DESCRIPTION = {
+        // Row 1
+        { KeyEvent.KEYCODE_Q,       '\u0636', 0,        0,        0 },
+        { KeyEvent.KEYCODE_W,       '\u0635', 0,        0,        0 },
+        { KeyEvent.KEYCODE_E,       '\u062B', 0,        0,        0 },
+        { KeyEvent.KEYCODE_R,       '\u0642', 0,        0,        0 },
+        { KeyEvent.KEYCODE_T,       '\u0641', 0,        0,        0 },
+        { KeyEvent.KEYCODE_Y,       '\u063A', 0,        0,        0 },
+        { KeyEvent.KEYCODE_U,       '\u0639', 0,        0,        0 },
+        { KeyEvent.KEYCODE_I,       '\u0647', 0,        0,        0 },
+        { KeyEvent.KEYCODE_O,       '\u062E', 0,        0,        0 },
+        { KeyEvent.KEYCODE_P,       '\u062D', 0,        0,        0 },
+
+        // Row 2: shift gives the hamza forms and alef with madda above.
+        { KeyEvent.KEYCODE_A,       '\u0634', '\u0624', 0,        0 },
+        { KeyEvent.KEYCODE_S,       '\u0633', '\u0626', 0,        0 },
+        { KeyEvent.KEYCODE_D,       '\u06CC', 0,        0,        0 },
+        { KeyEvent.KEYCODE_F,       '\u0628', '\u0625', 0,        0 },
+        { KeyEvent.KEYCODE_G,       '\u0644', '\u0623', 0,        0 },
+        { KeyEvent.KEYCODE_H,       '\u0627', '\u0622', 0,        0 },
+        { KeyEvent.KEYCODE_J,       '\u062A', 0,        '\u06A9', 0 },
+        { KeyEvent.KEYCODE_K,       '\u0646', 0,        0,        0 },
+        { KeyEvent.KEYCODE_L,       '\u0645', 0,        '\u06AF', 0 },
+
+        // Row 3: shift-B is a zero-width non-joiner.
+        { KeyEvent.KEYCODE_Z,       '\u0638', 0,        0,        0 },
+        { KeyEvent.KEYCODE_X,       '\u0637', 0,        0,        0 },
+        { KeyEvent.KEYCODE_C,       '\u0632', '\u0698', 0,        0 },
+        { KeyEvent.KEYCODE_V,       '\u0631', 0,        '\u062C', 0 },
+        { KeyEvent.KEYCODE_B,       '\u0630', '\u200C', '\u0686', 0 },
+        { KeyEvent.KEYCODE_N,       '\u062F', 0,        0,        0 },
+        { KeyEvent.KEYCODE_M,       '\u067E', '\u0621', 0,        0 },
+        { KeyEvent.KEYCODE_COMMA,   '\u0648', '\u0621', 0,        0 },
+
+        // Digits and punctuation are committed on their own.
+        { KeyEvent.KEYCODE_0,       '\u06F0', ')',      0,        FLAG_STANDALONE },
+        { KeyEvent.KEYCODE_1,       '\u06F1', '!',      0,        FLAG_STANDALONE },
+        { KeyEvent.KEYCODE_2,       '\u06F2', '\u066C', 0,        FLAG_STANDALONE },
+        { KeyEvent.KEYCODE_3,       '\u06F3', '\u066B', 0,        FLAG_STANDALONE },
+        { KeyEvent.KEYCODE_4,       '\u06F4', '\uFDFC', 0,        FLAG_STANDALONE },
+        { KeyEvent.KEYCODE_5,       '\u06F5', '\u066A', 0,        FLAG_STANDALONE },
+        { KeyEvent.KEYCODE_6,       '\u06F6', '\u00D7', 0,        FLAG_STANDALONE },
+        { KeyEvent.KEYCODE_7,       '\u06F7', '\u060C', 0,        FLAG_STANDALONE },
+        { KeyEvent.KEYCODE_8,       '\u06F8', '*',      0,        FLAG_STANDALONE },
+        { KeyEvent.KEYCODE_9,       '\u06F9', '(',      0,        FLAG_STANDALONE },
+        // TODO: Find out why KEYCODE_PERIOD is never received.
+        { KeyEvent.KEYCODE_PERIOD,  '.',      '/',      0,        FLAG_STANDALONE },
+
+        // Handle (Alt-)Space so the insert symbol dialog doesn't show.
+        { KeyEvent.KEYCODE_SPACE,  ' ',      0,        ' ',      FLAG_STANDALONE },
+    };
+
+    private final char[] mChars;
+    private final byte[] mFlags;
+
+    /**
+     * Compile a layout description into lookup tables.
+     */
+    HardKeyLayout(int[][] description) {
+        int maxKeyCode = 0;
+        for (int[] row : description) {
+            maxKeyCode = Math.max(maxKeyCode, row[0]);
+        }
+
+        mChars = new char[(maxKeyCode + 1) * NUM_META_STATES];
+        mFlags = new byte[maxKeyCode + 1];
+        for (int[] row : description) {
+            final int base = row[0] * NUM_META_STATES;
+            mChars[base + META_NONE] = (char) row[1];
+            mChars[base + META_SHIFT] = (char) (row[2] != 0 ? row[2] : row[1]);
+            mChars[base + META_ALT] = (char) row[3];
+            mFlags[row[0]] = (byte) row[4];
+        }
+    }
+
+    /**
+     * Returns the table column for the meta keys held down in the event, or
+     * META_UNMAPPED if no key is mapped in that state.
+     */
+    static int getMetaIndex(KeyEvent event) {
+        if (event.isSymPressed()) {
+            return META_UNMAPPED;
+        }
+        if (event.isAltPressed()) {
+            return event.isShiftPressed() ? META_UNMAPPED : META_ALT;
+        }
+        return event.isShiftPressed() ? META_SHIFT : META_NONE;
+    }
+
+    /**
+     * Returns the character for the key in the given meta state, or 0 if the
+     * key is not mapped.
+     */
+    char getChar(int keyCode, int metaIndex) {
+        final int index = keyCode * NUM_META_STATES + metaIndex;
+        if (keyCode < 0 || index >= mChars.length) {
+            return 0;
+        }
+        return mChars[index];
+    }
+
+    boolean isStandalone(int keyCode) {
+        return keyCode >= 0 && keyCode < mFlags.length
+                && (mFlags[keyCode] & FLAG_STANDALONE) != 0;
+    }
+}
@@ -19,8 +19,12 @@
 package com.example.android.inputmethod.persian;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 
+import android.app.ActivityManager;
+import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.inputmethodservice.InputMethodService;
@@ -34,7 +38,6 @@ import android.view.KeyEvent;
 import android.view.View;
 import android.view.inputmethod.CompletionInfo;
 import android.view.inputmethod.EditorInfo;
-import android.view.inputmethod.InputConnection;
 
 /**
  * Example of writing an input method for a soft keyboard.  This code is
@@ -57,11 +60,26 @@ public class PersianInputMethodService extends InputMethodService
      */
     static final boolean PROCESS_HARD_KEYS = true;
 
+    // How much to give up when memory is low.
+    private static final int TRIM_TIER_CACHES = 1;
+    private static final int TRIM_TIER_IDLE = 2;
+    private static final int TRIM_TIER_CORE = 3;
+
     private KeyboardView mInputView;
     private CandidateView mCandidateView;
     private CompletionInfo[] mCompletions;
 
     private StringBuilder mComposing = new StringBuilder();
+    // Whether the next cursor movement will be the editor finishing one of
+    // our own edits (e.g., the newline after a hard Enter key, which it
+    // inserts itself), or happen while closing, rather than the user moving
+    // the cursor.  A word is not picked up again after such a movement.
+    private boolean mIgnoreNextMove;
+
+    // Whether mComposing is a word already in the text, which the user has
+    // gone back to and not changed yet.
+    private boolean mComposingRestored;
+    private final EditorConnection mEditor = new EditorConnection(this);
     private boolean mPredictionOn;
     private boolean mCompletionOn;
     private int mLastDisplayWidth;
@@ -75,18 +93,53 @@ public class PersianInputMethodService extends InputMethodService
 
     private PersianKeyboard mCurKeyboard;
 
-    private String mWordSeparators;
+    // Keyboards that have already been built, keyed by layout and display width.
+    private final HashMap<Long, PersianKeyboard> mKeyboardCache = new HashMap<Long, PersianKeyboard>();
+
+    // Mapping of the hardware keyboard to Persian characters.
+    private final HardKeyLayout mHardKeyLayout = new HardKeyLayout(HardKeyLayout.ISIRI_2901_DESCRIPTION);
 
     // Preferences settings.
     private boolean mPrefSelectSuggestion;
     private boolean mPrefUseReducedKeys;
     private boolean mPrefPreferFullscreenMode;
     private boolean mPrefShowRedundantKeyboard;
+    private boolean mPrefPinglish;
+
+    // The largest heap size, in megabytes, at which the dictionary is kept
+    // in succinct tries.
+    private static final int LOW_MEMORY_CLASS = 24;
 
     // Persian vocabulary
     static private PersianWordGuesser mGuesser = null;
-    static private ArrayList<String> mCandidateList = null;
+    private final CandidateBuffer mCandidates = new CandidateBuffer(MAX_CANDIDATES);
     static private String mBestGuess = null;
+    private GuessPrefetcher mPrefetcher;
+    // How many next characters to prefetch guesses for, and the CPU time to
+    // spend on them after each keystroke: all of it normally, less when
+    // memory is short, and none when it is critical.
+    private static final int PREFETCH_COUNT = 3;
+    private static final long PREFETCH_BUDGET_MILLIS = 30;
+    private static final long LOW_MEMORY_PREFETCH_BUDGET_MILLIS = 10;
+
+    // Latin letters typed on the hardware keyboard in Pinglish mode, the
+    // Persian words decoded for them after the last key, and how many.
+    private PinglishDecoder mPinglish;
+    private ArrayList<String> mPinglishWords = new ArrayList<String>();
+    private static final int MAX_PINGLISH_CANDIDATES = 20;
+
+    // The most candidates shown at once: the typed word, the phrases it
+    // continues, and the guesses for it.
+    private static final int MAX_CANDIDATES = 1 + MAX_PHRASE_CANDIDATES
+            + PersianWordGuesser.MAX_RETURNED_GUESSES;
+
+    // Where a dictionary phrase may continue after the words just committed,
+    // or null, and how many of its phrases to suggest.
+    private PersianWordGuesser.PhraseCursor mPhrase;
+    private static final int MAX_PHRASE_CANDIDATES = 3;
+    // The candidates, by index, which are phrases from the cursor.
+    private int mPhraseCandidatesStart;
+    private int mPhraseCandidatesEnd;
 
     /**
      * Main initialization of the input method component.  Be sure to call
@@ -94,15 +147,19 @@ public class PersianInputMethodService extends InputMethodService
      */
     @Override public void onCreate() {
         super.onCreate();
-        mWordSeparators = getResources().getString(R.string.word_separators);
+        PersianCharClass.setWordSeparators(getResources().getString(R.string.word_separators));
 
         // Initialise the Persian word mGuesser (and restore its state).
         if( mGuesser == null ) {
-            mGuesser = new PersianWordGuesser(getBaseContext());
-        }
-        if( mCandidateList == null ) {
-            mCandidateList = new ArrayList<String>();
+            mGuesser = new PersianWordGuesser(
+                    new ResourceWordListSource(getResources(), R.raw.persianwords),
+                    new PreferencesWordStore(PreferenceManager.getDefaultSharedPreferences(getBaseContext())));
         }
+        // Keep the dictionary in succinct tries where memory is tight.
+        ActivityManager activityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        mGuesser.setUseSuccinctTries(activityManager.getMemoryClass() <= LOW_MEMORY_CLASS);
+        mPrefetcher = new GuessPrefetcher(mGuesser, PREFETCH_COUNT, PREFETCH_BUDGET_MILLIS);
+        mPinglish = new PinglishDecoder(mGuesser);
 
         // Register the listener for a shared preference change.
         PreferenceManager.getDefaultSharedPreferences(this).registerOnSharedPreferenceChangeListener(this);
@@ -116,6 +173,7 @@ public class PersianInputMethodService extends InputMethodService
         // However, do NOT set mGuesser to null here, as the updateCandidates
         // is sometimes called after onDestroy.
         mGuesser.saveState();
+        mPrefetcher.cancel();
 
         PreferenceManager.getDefaultSharedPreferences(this).unregisterOnSharedPreferenceChangeListener(this);
 
@@ -123,6 +181,79 @@ public class PersianInputMethodService extends InputMethodService
         super.onDestroy();
     }
 
+    /*
+     * Called when the system is running low on memory.
+     */
+    @Override public void onLowMemory() {
+        super.onLowMemory();
+        trimMemory(TRIM_TIER_CORE, true);
+    }
+
+    /*
+     * Called from API level 14 to say how much memory we should give up.
+     * Older platforms never call it.
+     */
+    @Override public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        boolean isHidden = level >= TRIM_MEMORY_UI_HIDDEN;
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimMemory(TRIM_TIER_CORE, isHidden);
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+            trimMemory(TRIM_TIER_IDLE, isHidden);
+        } else {
+            trimMemory(TRIM_TIER_CACHES, isHidden);
+        }
+    }
+
+    /*
+     * Drop what we can rebuild when it is next needed, keeping more of it
+     * the lower the tier.
+     */
+    private void trimMemory(int tier, boolean isHidden) {
+        // Guesses that were computed ahead of time, or for recent and short
+        // words.  Fewer are computed ahead from now on, the less memory
+        // there is; a milder trim restores the budget.
+        mPrefetcher.cancel();
+        mGuesser.releaseCaches();
+        if (tier >= TRIM_TIER_CORE) {
+            mPrefetcher.setBudget(0);
+        } else if (tier >= TRIM_TIER_IDLE) {
+            mPrefetcher.setBudget(LOW_MEMORY_PREFETCH_BUDGET_MILLIS);
+        } else {
+            mPrefetcher.setBudget(PREFETCH_BUDGET_MILLIS);
+        }
+
+        if (isHidden || tier >= TRIM_TIER_IDLE) {
+            // The pre-rendered keyboard is redrawn when next shown.
+            if (mInputView instanceof PersianKeyboardView) {
+                ((PersianKeyboardView) mInputView).releaseAtlas();
+            }
+        }
+
+        if (tier >= TRIM_TIER_IDLE) {
+            // Keyboards for other layouts and widths, and dictionary shards
+            // that are not in use.
+            releaseUnusedKeyboards();
+            mGuesser.releaseIdleShards();
+        }
+
+        if (tier >= TRIM_TIER_CORE) {
+            // Keep only the compact form of the dictionary.
+            mGuesser.releaseAllShards();
+        }
+    }
+
+    private void releaseUnusedKeyboards() {
+        Iterator<PersianKeyboard> iterator = mKeyboardCache.values().iterator();
+        while (iterator.hasNext()) {
+            PersianKeyboard keyboard = iterator.next();
+            if (keyboard != mStandardKeyboard && keyboard != mCurKeyboard
+                    && keyboard != mSymbolsKeyboard && keyboard != mSymbolsShiftedKeyboard) {
+                iterator.remove();
+            }
+        }
+    }
+
     // Implements the interface for OnSharedPreferenceChangeListener.
     public void onSharedPreferenceChanged(final SharedPreferences sharedPrefs, final String key) {
         // If shared preferences have changed, update the values.
@@ -130,6 +261,9 @@ public class PersianInputMethodService extends InputMethodService
         if (key.equals(Preferences.KEY_SELECT_SUGGESTION_CHECKBOX_PREFERENCE)) {
             mPrefSelectSuggestion = sharedPrefs.getBoolean(Preferences.KEY_SELECT_SUGGESTION_CHECKBOX_PREFERENCE, true);
 
+        } else if (key.equals(Preferences.KEY_PINGLISH_CHECKBOX_PREFERENCE)) {
+            mPrefPinglish = sharedPrefs.getBoolean(Preferences.KEY_PINGLISH_CHECKBOX_PREFERENCE, false);
+
         } else if (key.equals(Preferences.KEY_USE_REDUCED_KEYS_CHECKBOX_PREFERENCE)) {
             mPrefUseReducedKeys = sharedPrefs.getBoolean(Preferences.KEY_USE_REDUCED_KEYS_CHECKBOX_PREFERENCE, false);
             configureKeyboards();
@@ -149,12 +283,47 @@ public class PersianInputMethodService extends InputMethodService
     private void configureKeyboards()
     {
         if( mPrefUseReducedKeys ) {
-            mStandardKeyboard = new PersianKeyboard(this, R.xml.reduced_keys);
+            mStandardKeyboard = getKeyboard(R.xml.reduced_keys);
         } else {
-            mStandardKeyboard = new PersianKeyboard(this, R.xml.standard);
+            mStandardKeyboard = getKeyboard(R.xml.standard);
         }
-        mSymbolsKeyboard = new PersianKeyboard(this, R.xml.symbols);
-        mSymbolsShiftedKeyboard = new PersianKeyboard(this, R.xml.symbols);
+
+        // The symbol keyboards are only built when they are first shown, but
+        // pick them up if they have already been built for this width.
+        mSymbolsKeyboard = mKeyboardCache.get(getKeyboardCacheKey(R.xml.symbols));
+        mSymbolsShiftedKeyboard = mKeyboardCache.get(getKeyboardCacheKey(R.xml.symbols_shift));
+    }
+
+    private Long getKeyboardCacheKey(int xmlLayoutResId) {
+        return Long.valueOf(((long)xmlLayoutResId << 32) | (mLastDisplayWidth & 0xFFFFFFFFL));
+    }
+
+    /*
+     * Return the keyboard for the given layout at the current display width,
+     * parsing the layout only if it has not been built for this width before.
+     */
+    private PersianKeyboard getKeyboard(int xmlLayoutResId) {
+        Long key = getKeyboardCacheKey(xmlLayoutResId);
+        PersianKeyboard keyboard = mKeyboardCache.get(key);
+        if (keyboard == null) {
+            keyboard = new PersianKeyboard(this, xmlLayoutResId);
+            mKeyboardCache.put(key, keyboard);
+        }
+        return keyboard;
+    }
+
+    private PersianKeyboard getSymbolsKeyboard() {
+        if (mSymbolsKeyboard == null) {
+            mSymbolsKeyboard = getKeyboard(R.xml.symbols);
+        }
+        return mSymbolsKeyboard;
+    }
+
+    private PersianKeyboard getSymbolsShiftedKeyboard() {
+        if (mSymbolsShiftedKeyboard == null) {
+            mSymbolsShiftedKeyboard = getKeyboard(R.xml.symbols_shift);
+        }
+        return mSymbolsShiftedKeyboard;
     }
 
     /**
@@ -167,20 +336,19 @@ public class PersianInputMethodService extends InputMethodService
 
         // Input preferences.
         mPrefSelectSuggestion = sharedPrefs.getBoolean(Preferences.KEY_SELECT_SUGGESTION_CHECKBOX_PREFERENCE, true);
+        mPrefPinglish = sharedPrefs.getBoolean(Preferences.KEY_PINGLISH_CHECKBOX_PREFERENCE, false);
 
         // Display preferences.
         mPrefUseReducedKeys = sharedPrefs.getBoolean(Preferences.KEY_USE_REDUCED_KEYS_CHECKBOX_PREFERENCE, false);
         mPrefPreferFullscreenMode = sharedPrefs.getBoolean(Preferences.KEY_PREFER_FULLSCREEN_CHECKBOX_PREFERENCE, false);
         mPrefShowRedundantKeyboard = sharedPrefs.getBoolean(Preferences.KEY_SHOW_REDUNDANT_KEYBOARD_CHECKBOX_PREFERENCE, true);
 
-        if (mStandardKeyboard != null) {
-            // Configuration changes can happen after the keyboard gets recreated,
-            // so we need to be able to re-build the keyboards if the available
-            // space has changed.
-            int displayWidth = getMaxWidth();
-            if (displayWidth == mLastDisplayWidth) return;
-            mLastDisplayWidth = displayWidth;
-        }
+        // Configuration changes can happen after the keyboard gets recreated,
+        // so we need to be able to switch keyboards if the available space
+        // has changed.  Keyboards already built for a width are reused.
+        int displayWidth = getMaxWidth();
+        if (mStandardKeyboard != null && displayWidth == mLastDisplayWidth) return;
+        mLastDisplayWidth = displayWidth;
 
         // Configure the keyboards.
         configureKeyboards();
@@ -205,7 +373,7 @@ public class PersianInputMethodService extends InputMethodService
      * be generated, like {@link #onCreateInputView}.
      */
     @Override public View onCreateCandidatesView() {
-        mCandidateView = new CandidateView(this);
+        mCandidateView = new CandidateView(this, MAX_CANDIDATES);
         mCandidateView.setService(this);
         setCandidatesViewShown(true);
         return mCandidateView;
@@ -230,10 +398,15 @@ public class PersianInputMethodService extends InputMethodService
      */
     @Override public void onStartInput(EditorInfo attribute, boolean restarting) {
         super.onStartInput(attribute, restarting);
+        mEditor.onStartInput(attribute);
 
         // Reset our state.  We want to do this even if restarting, because
         // the underlying state of the text editor could have changed in any way.
         mComposing.setLength(0);
+        mPinglish.clear();
+        mPhrase = null;
+        mComposingRestored = false;
+        mIgnoreNextMove = false;
         updateCandidates();
 
         if (!restarting) {
@@ -252,13 +425,13 @@ public class PersianInputMethodService extends InputMethodService
             case EditorInfo.TYPE_CLASS_DATETIME:
                 // Numbers and dates default to the symbols keyboard, with
                 // no extra features.
-                mCurKeyboard = mSymbolsKeyboard;
+                mCurKeyboard = getSymbolsKeyboard();
                 break;
 
             case EditorInfo.TYPE_CLASS_PHONE:
                 // Phones will also default to the symbols keyboard, though
                 // often you will want to have a dedicated phone keyboard.
-                mCurKeyboard = mSymbolsKeyboard;
+                mCurKeyboard = getSymbolsKeyboard();
                 break;
 
             case EditorInfo.TYPE_CLASS_TEXT:
@@ -324,6 +497,9 @@ public class PersianInputMethodService extends InputMethodService
 
         // Clear current composing text and candidates.
         mComposing.setLength(0);
+        mPinglish.clear();
+        mPhrase = null;
+        mComposingRestored = false;
         updateCandidates();
 
         // We only hide the candidates window when finishing input on
@@ -356,18 +532,54 @@ public class PersianInputMethodService extends InputMethodService
             int candidatesStart, int candidatesEnd) {
         super.onUpdateSelection(oldSelStart, oldSelEnd, newSelStart, newSelEnd,
                 candidatesStart, candidatesEnd);
+        final boolean moved = mEditor.onUpdateSelection(newSelStart, newSelEnd,
+                candidatesStart, candidatesEnd);
+        final boolean movedByUser = moved && !mIgnoreNextMove;
+        if (moved) {
+            mIgnoreNextMove = false;
+        }
+        if (moved && mPhrase != null) {
+            // The phrase is no longer before the cursor.
+            mPhrase = null;
+            updateCandidates();
+        }
 
         // If the current selection in the text view changes, we should
         // clear whatever candidate text we have.
         if (mComposing.length() > 0 && (newSelStart != candidatesEnd
                 || newSelEnd != candidatesEnd)) {
             mComposing.setLength(0);
+            mPinglish.clear();
+            mComposingRestored = false;
             updateCandidates();
-            InputConnection ic = getCurrentInputConnection();
-            if (ic != null) {
-                ic.finishComposingText();
+            mEditor.finishComposingText();
+        }
+
+        // If the user has moved the cursor to the end of a word, pick the
+        // word up again so that it can be corrected.  Our own commits leave
+        // the cursor after a word too, but those are not picked up.
+        if (movedByUser && mComposing.length() == 0 && mPredictionOn && !mCompletionOn) {
+            recomposeWordBeforeCursor();
+        }
+    }
+
+    private void recomposeWordBeforeCursor() {
+        String word = mEditor.getWordBeforeCursor();
+        if (word == null) {
+            return;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (!PersianCharClass.isValid(word.charAt(i))) {
+                // Not a word that we could have suggested.
+                return;
             }
         }
+        if (mEditor.recomposeWordBeforeCursor(word)) {
+            mComposing.append(word);
+            mComposingRestored = true;
+            // The guesses for a word just typed are usually still cached.
+            updateCandidates();
+        }
     }
 
     /**
@@ -403,8 +615,7 @@ public class PersianInputMethodService extends InputMethodService
                 keyCode, event);
         int c = event.getUnicodeChar(MetaKeyKeyListener.getMetaState(mMetaState));
         mMetaState = MetaKeyKeyListener.adjustMetaAfterKeypress(mMetaState);
-        InputConnection ic = getCurrentInputConnection();
-        if (c == 0 || ic == null) {
+        if (c == 0 || !mEditor.isConnected()) {
             return false;
         }
 
@@ -436,6 +647,17 @@ public class PersianInputMethodService extends InputMethodService
      * continue to the app.
      */
     @Override public boolean onKeyDown(int keyCode, KeyEvent event) {
+        // A key the editor handled itself may not have moved the cursor.
+        mIgnoreNextMove = false;
+
+        // Group all the edits for this key into one batch.
+        mEditor.beginBatchEdit();
+        boolean handled = handleKeyDown(keyCode, event);
+        mEditor.endBatchEdit();
+        return handled;
+    }
+
+    private boolean handleKeyDown(int keyCode, KeyEvent event) {
         switch (keyCode) {
             case KeyEvent.KEYCODE_BACK:
                 // The InputMethodService already takes care of the back
@@ -468,360 +690,53 @@ public class PersianInputMethodService extends InputMethodService
                 // text being entered with a hard keyboard, we need to process
                 // it and do the appropriate action.
                 if (PROCESS_HARD_KEYS) {
-                    InputConnection ic = getCurrentInputConnection();
-                    if( ic != null ) {
-                        if (!event.isAltPressed() &&
-                                !event.isSymPressed()) {
-                            // Neither Alt nor Sym is pressed (but Shift might be pressed).
-
-                            // The following code is really ugly.  It should
-                            // probably be changed to use an array or hash table.
-                            switch(keyCode) {
-                                // Row 1
-                                case KeyEvent.KEYCODE_Q:
-                                    mComposing.append("\u0636");
-                                      break;
-
-                                case KeyEvent.KEYCODE_W:
-                                    mComposing.append("\u0635");
-                                      break;
-
-                                case KeyEvent.KEYCODE_E:
-                                    mComposing.append("\u062B");
-                                      break;
-
-                                case KeyEvent.KEYCODE_R:
-                                    mComposing.append("\u0642");
-                                    break;
-
-                                case KeyEvent.KEYCODE_T:
-                                    mComposing.append("\u0641");
-                                    break;
-
-                                case KeyEvent.KEYCODE_Y:
-                                    mComposing.append("\u063A");
-                                    break;
-
-                                case KeyEvent.KEYCODE_U:
-                                      mComposing.append("\u0639");
-                                      break;
-
-                                case KeyEvent.KEYCODE_I:
-                                      mComposing.append("\u0647");
-                                      break;
-
-                                case KeyEvent.KEYCODE_O:
-                                      mComposing.append("\u062E");
-                                      break;
-
-                                case KeyEvent.KEYCODE_P:
-                                      mComposing.append("\u062D");
-                                      break;
-                                  // Note that "[" and "]" are treated as Alt-V and Alt-B.
-
-                                  // Row 2
-                                case KeyEvent.KEYCODE_A:
-                                      if( event.isShiftPressed() ) {
-                                        // If shift is pressed, then it's vav with hamza above.
-                                        mComposing.append("\u0624");
-                                    } else {
-                                        // Regular shin.
-                                          mComposing.append("\u0634");
-                                    }
-                                      break;
-
-                                case KeyEvent.KEYCODE_S:
-                                      if( event.isShiftPressed() ) {
-                                        // If shift is pressed, then it's yeh with hamza above.
-                                        mComposing.append("\u0626");
-                                    } else {
-                                        // Regular sin.
-                                          mComposing.append("\u0633");
-                                    }
-                                      break;
-
-                                case KeyEvent.KEYCODE_D:
-                                      mComposing.append("\u06CC");
-                                      break;
-
-                                case KeyEvent.KEYCODE_F:
-                                      if( event.isShiftPressed() ) {
-                                        // If shift is pressed, then it's alef with hamza below.
-                                        mComposing.append("\u0625");
-                                    } else {
-                                        // Regular beh.
-                                          mComposing.append("\u0628");
-                                    }
-                                      break;
-
-                                case KeyEvent.KEYCODE_G:
-                                      if( event.isShiftPressed() ) {
-                                        // If shift is pressed, then it's alef with hamza above.
-                                        mComposing.append("\u0623");
-                                    } else {
-                                        // Regular lam.
-                                          mComposing.append("\u0644");
-                                    }
-                                      break;
-
-                                case KeyEvent.KEYCODE_H:
-                                      if( event.isShiftPressed() ) {
-                                        // If shift is pressed, then it's an alef with madda above.
-                                        mComposing.append("\u0622");
-                                    } else {
-                                        // Regular alef.
-                                          mComposing.append("\u0627");
-                                    }
-                                      break;
-
-                                case KeyEvent.KEYCODE_J:
-                                      mComposing.append("\u062A");
-                                      break;
-
-                                case KeyEvent.KEYCODE_K:
-                                      mComposing.append("\u0646");
-                                      break;
-
-                                case KeyEvent.KEYCODE_L:
-                                      mComposing.append("\u0645");
-                                      break;
-                                  // Note that ";" and "'" are treated as Alt-J and Alt-L.
-
-                                case KeyEvent.KEYCODE_Z:
-                                      mComposing.append("\u0638");
-                                      break;
-
-                                case KeyEvent.KEYCODE_X:
-                                      mComposing.append("\u0637");
-                                      break;
-
-                                case KeyEvent.KEYCODE_C:
-                                      if( event.isShiftPressed() ) {
-                                        // If shift is pressed, then it's a zheh.
-                                        mComposing.append("\u0698");
-                                    } else {
-                                        // Regular zeh.
-                                          mComposing.append("\u0632");
-                                    }
-                                      break;
-
-                                case KeyEvent.KEYCODE_V:
-                                      mComposing.append("\u0631");
-                                      break;
-
-                                case KeyEvent.KEYCODE_B:
-                                      if( event.isShiftPressed() ) {
-                                        // If shift is pressed, then it's a zero-width non-joiner.
-                                        mComposing.append("\u200C");
-                                    } else {
-                                        // The letter zal.
-                                          mComposing.append("\u0630");
-                                    }
-                                      break;
-
-                                case KeyEvent.KEYCODE_N:
-                                      mComposing.append("\u062F");
-                                      break;
-
-                                case KeyEvent.KEYCODE_M:
-                                      if( event.isShiftPressed() ) {
-                                        // If shift is pressed, then it's a hamza.
-                                        mComposing.append("\u0621");
-                                    } else {
-                                        // The letter peh.
-                                          mComposing.append("\u067E");
-                                    }
-                                      break;
-
-                                case KeyEvent.KEYCODE_COMMA:
-                                      if( event.isShiftPressed() ) {
-                                        // If shift is pressed, then it's a Persian question mark.
-                                        mComposing.append("\u0621");
-                                    } else {
-                                        // The letter vav.
-                                          mComposing.append("\u0648");
-                                    }
-                                      break;
-
-                                case KeyEvent.KEYCODE_0:
-                                    commitTyped(ic);
-                                      if( event.isShiftPressed() ) {
-                                        mComposing.append(")");
-                                    } else {
-                                        mComposing.append("\u06F0");
-                                    }
-                                    commitTyped(ic);
-                                    break;
-
-                                case KeyEvent.KEYCODE_1:
-                                    commitTyped(ic);
-                                      if( event.isShiftPressed() ) {
-                                        mComposing.append("!");
-                                    } else {
-                                        mComposing.append("\u06F1");
-                                    }
-                                    commitTyped(ic);
-                                    break;
-
-                                case KeyEvent.KEYCODE_2:
-                                    commitTyped(ic);
-                                      if( event.isShiftPressed() ) {
-                                        mComposing.append("\u066C");
-                                    } else {
-                                        mComposing.append("\u06F2");
-                                    }
-                                    commitTyped(ic);
-                                    break;
-
-                                case KeyEvent.KEYCODE_3:
-                                    commitTyped(ic);
-                                      if( event.isShiftPressed() ) {
-                                        mComposing.append("\u066B");
-                                    } else {
-                                        mComposing.append("\u06F3");
-                                    }
-                                    commitTyped(ic);
-                                    break;
-
-                                case KeyEvent.KEYCODE_4:
-                                    commitTyped(ic);
-                                      if( event.isShiftPressed() ) {
-                                        mComposing.append("\uFDFC");
-                                    } else {
-                                        mComposing.append("\u06F4");
-                                    }
-                                    commitTyped(ic);
-                                    break;
-
-                                case KeyEvent.KEYCODE_5:
-                                    commitTyped(ic);
-                                      if( event.isShiftPressed() ) {
-                                        mComposing.append("\u066A");
-                                    } else {
-                                        mComposing.append("\u06F5");
-                                    }
-                                    commitTyped(ic);
-                                    break;
-
-                                case KeyEvent.KEYCODE_6:
-                                    commitTyped(ic);
-                                      if( event.isShiftPressed() ) {
-                                        mComposing.append("\u00D7");
-                                    } else {
-                                        mComposing.append("\u06F6");
-                                    }
-                                    commitTyped(ic);
-                                    break;
-
-                                case KeyEvent.KEYCODE_7:
-                                    commitTyped(ic);
-                                      if( event.isShiftPressed() ) {
-                                        mComposing.append("\u060C");
-                                    } else {
-                                        mComposing.append("\u06F7");
-                                    }
-                                    commitTyped(ic);
-                                    break;
-
-                                case KeyEvent.KEYCODE_8:
-                                    commitTyped(ic);
-                                      if( event.isShiftPressed() ) {
-                                        mComposing.append("\u002A");
-                                    } else {
-                                        mComposing.append("\u06F8");
-                                    }
-                                    commitTyped(ic);
-                                    break;
-
-                                case KeyEvent.KEYCODE_9:
-                                    commitTyped(ic);
-                                      if( event.isShiftPressed() ) {
-                                        mComposing.append("(");
-                                    } else {
-                                        mComposing.append("\u06F9");
-                                    }
-                                    commitTyped(ic);
-                                    break;
-
-                                case KeyEvent.KEYCODE_PERIOD:
-                                    // TODO: Find out why this is never reached.
-                                    commitTyped(ic);
-                                      if( event.isShiftPressed() ) {
-                                        mComposing.append("/");
-                                    } else {
-                                        mComposing.append(".");
-                                    }
-                                    commitTyped(ic);
-                                    break;
-
-                                case KeyEvent.KEYCODE_ENTER:
-                                    commitTyped(ic);
-                                    // Commit what is currently being typed, but
-                                    // let the underlying editor handle the Enter key.
-                                    return false;
-
-                                case KeyEvent.KEYCODE_SPACE:
-                                    // Handle Space so the insert symbol dialog doesn't show.
-                                    commitTyped(ic);
-                                    mComposing.append(" ");
-                                    commitTyped(ic);
-                                    break;
-
-                                  default:
-                                    // Let the underlying text editor handle this.
-                                      return false;
-
+                    if( mEditor.isConnected() ) {
+                        int metaIndex = HardKeyLayout.getMetaIndex(event);
+                        if (mPrefPinglish && mPredictionOn) {
+                            char latin = getPinglishLetter(keyCode, metaIndex);
+                            if (latin != 0) {
+                                if (mPinglish.length() == 0) {
+                                    // Finish any word typed in Persian.
+                                    commitTyped();
+                                }
+                                mPinglish.append(latin);
+                                composePinglish();
+                                return true;
+                            }
+                        }
+                        if (metaIndex != HardKeyLayout.META_UNMAPPED) {
+                            if (keyCode == KeyEvent.KEYCODE_ENTER
+                                    && metaIndex != HardKeyLayout.META_ALT) {
+                                // Commit what is currently being typed, but
+                                // let the underlying editor handle the Enter key.
+                                commitTyped();
+                                continuePhrase(null, '\n');
+                                mIgnoreNextMove = true;
+                                return false;
                             }
-                            ic.setComposingText(mComposing, 1);
-                            updateShiftKeyState(getCurrentInputEditorInfo());
-                              updateCandidates();
-                              return true;
-
-                        } else if (event.isAltPressed() &&
-                                !event.isShiftPressed() &&
-                                !event.isSymPressed()) {
-                            // The Alt meta key is pressed.
-
-                            switch(keyCode) {
-                                case KeyEvent.KEYCODE_V:
-                                    // Alt-V is "[", which is jim.
-                                      mComposing.append("\u062C");
-                                      break;
-
-                                case KeyEvent.KEYCODE_B:
-                                    // Alt-B is "]", which is cheh.
-                                    mComposing.append("\u0686");
-                                    break;
-
-                                case KeyEvent.KEYCODE_J:
-                                    // Alt-J is ";", which is kaf.
-                                    mComposing.append("\u06A9");
-                                    break;
-
-                                case KeyEvent.KEYCODE_L:
-                                    // Alt-L is "'", which is gaf.
-                                    mComposing.append("\u06AF");
-                                    break;
-
-                                case KeyEvent.KEYCODE_SPACE:
-                                    // Handle Alt-Space so the insert symbol dialog doesn't show.
-                                    commitTyped(ic);
-                                    mComposing.append(" ");
-                                    commitTyped(ic);
-                                    break;
-
-                                  default:
-                                      return false;
 
+                            char c = mHardKeyLayout.getChar(keyCode, metaIndex);
+                            if (c == 0) {
+                                // Let the underlying text editor handle this.
+                                return false;
+                            }
+                            if (mHardKeyLayout.isStandalone(keyCode)) {
+                                // Digits, punctuation and space are not part of a word.
+                                String word = commitTyped();
+                                mComposing.append(c);
+                                commitTyped();
+                                continuePhrase(word, c);
+                            } else {
+                                mComposing.append(c);
+                                mComposingRestored = false;
                             }
-                            ic.setComposingText(mComposing, 1);
+                            mEditor.setComposingText(mComposing, 1);
                             updateShiftKeyState(getCurrentInputEditorInfo());
-                              updateCandidates();
-                              return true;
-
+                            updateCandidates();
+                            return true;
                         }
 
-                    } // if ( ic != NULL )
+                    } // if ( mEditor.isConnected() )
 
                     if (mPredictionOn && translateKeyDown(keyCode, event)) {
                         return true;
@@ -832,6 +747,43 @@ public class PersianInputMethodService extends InputMethodService
         return super.onKeyDown(keyCode, event);
     }
 
+    /**
+     * Returns the Latin letter typed in Pinglish mode, or 0 if the key is
+     * not one.
+     */
+    private static char getPinglishLetter(int keyCode, int metaIndex) {
+        if (keyCode == KeyEvent.KEYCODE_APOSTROPHE && metaIndex == HardKeyLayout.META_NONE) {
+            return '\'';
+        }
+        if (keyCode < KeyEvent.KEYCODE_A || keyCode > KeyEvent.KEYCODE_Z) {
+            return 0;
+        }
+        if (metaIndex == HardKeyLayout.META_NONE) {
+            return (char) ('a' + keyCode - KeyEvent.KEYCODE_A);
+        } else if (metaIndex == HardKeyLayout.META_SHIFT) {
+            return (char) ('A' + keyCode - KeyEvent.KEYCODE_A);
+        }
+        return 0;
+    }
+
+    /**
+     * Compose the best Persian word for the Latin letters typed in Pinglish
+     * mode, or the letters themselves if there is none.
+     */
+    private void composePinglish() {
+        mComposingRestored = false;
+        mComposing.setLength(0);
+        if (mPinglish.length() > 0) {
+            // Decode once per key; updateCandidates shows the same words.
+            mPinglishWords = mPinglish.getCandidates(MAX_PINGLISH_CANDIDATES);
+            mComposing.append(mPinglishWords.isEmpty() ? mPinglish.getLatin() : mPinglishWords.get(0));
+            mEditor.setComposingText(mComposing, 1);
+        } else {
+            mEditor.commitText("", 0);
+        }
+        updateCandidates();
+    }
+
     /**
      * Use this to monitor key events being delivered to the application.
      * We get first crack at them, and can either resume them or let them
@@ -853,41 +805,60 @@ public class PersianInputMethodService extends InputMethodService
 
     /**
      * Helper function to commit any text being composed in to the editor.
+     * Returns the text committed, or null if there was none.
      */
-    private void commitTyped(InputConnection inputConnection, boolean isManuallyPicked) {
-        if ( !isManuallyPicked && mPrefSelectSuggestion && (mBestGuess != null) ) {
+    private String commitTyped(boolean isManuallyPicked) {
+        if ( !isManuallyPicked && !mComposingRestored && mPrefSelectSuggestion && (mBestGuess != null) ) {
             // If the word is manually picked, don't override the user's choice.
+            // Nor if it is a word the user has gone back to but not changed.
             // Otherwise, if the user has requested to select the suggestion,
             // replace the typed text with the best guess.
             mGuesser.selectWord(mBestGuess);
             mComposing = new StringBuilder(mBestGuess);
         }
 
+        String committed = null;
         if (mComposing.length() > 0) {
-            inputConnection.commitText(mComposing, mComposing.length());
+            committed = mComposing.toString();
+            mEditor.commitText(mComposing, 1);
             mComposing.setLength(0);
+            mPinglish.clear();
             updateCandidates();
         }
+        mComposingRestored = false;
+        return committed;
     }
 
-    private void commitTyped(InputConnection inputConnection) {
-        commitTyped(inputConnection, false);
+    private String commitTyped() {
+        return commitTyped(false);
+    }
+
+    /**
+     * Follow the phrases in the dictionary past the committed word, if it
+     * was ended with a space, or forget the phrase otherwise.
+     */
+    private void continuePhrase(String word, int separator) {
+        if (word == null || separator != ' ' || !mPredictionOn || mCompletionOn) {
+            mPhrase = null;
+        } else if (mPhrase == null || !mPhrase.commit(word)) {
+            // The word may start a new phrase.
+            mPhrase = mGuesser.startPhrase(word);
+        }
+        updateCandidates();
     }
 
 
     /**
      * Helper to update the shift state of our keyboard based on the initial
-     * editor state.
+     * editor state.  Persian has no letter case, so unlike a Latin keyboard
+     * we do not ask the editor for its caps mode, which would be a round-trip
+     * to the application on every keystroke.
      */
     private void updateShiftKeyState(EditorInfo attr) {
         if (attr != null
-                && mInputView != null && mStandardKeyboard == mInputView.getKeyboard()) {
-            int caps = 0;
-            EditorInfo ei = getCurrentInputEditorInfo();
-            if (ei != null && ei.inputType != EditorInfo.TYPE_NULL) {
-                caps = getCurrentInputConnection().getCursorCapsMode(attr.inputType);
-            }
-            mInputView.setShifted(mCapsLock || caps != 0);
+                && mInputView != null && mStandardKeyboard == mInputView.getKeyboard()
+                && mInputView.isShifted() != mCapsLock) {
+            mInputView.setShifted(mCapsLock);
         }
     }
 
@@ -895,20 +866,16 @@ public class PersianInputMethodService extends InputMethodService
      * Helper to determine if a given character code is alphabetic.
      */
     private boolean isAlphabet(int code) {
-        if (Character.isLetter(code)) {
-            return true;
-        } else {
-            return false;
-        }
+        return PersianCharClass.isLetter(code);
     }
 
     /**
      * Helper to send a key down / key up pair to the current editor.
      */
     private void keyDownUp(int keyEventCode) {
-        getCurrentInputConnection().sendKeyEvent(
+        mEditor.sendKeyEvent(
                 new KeyEvent(KeyEvent.ACTION_DOWN, keyEventCode));
-        getCurrentInputConnection().sendKeyEvent(
+        mEditor.sendKeyEvent(
                 new KeyEvent(KeyEvent.ACTION_UP, keyEventCode));
     }
 
@@ -924,7 +891,7 @@ public class PersianInputMethodService extends InputMethodService
                 if (keyCode >= '0' && keyCode <= '9') {
                     keyDownUp(keyCode - '0' + KeyEvent.KEYCODE_0);
                 } else {
-                    getCurrentInputConnection().commitText(String.valueOf((char) keyCode), 1);
+                    mEditor.commitText(String.valueOf((char) keyCode), 1);
                 }
                 break;
         }
@@ -933,12 +900,21 @@ public class PersianInputMethodService extends InputMethodService
     // Implementation of KeyboardViewListener
 
     public void onKey(int primaryCode, int[] keyCodes) {
+        // Group all the edits for this key into one batch.
+        mEditor.beginBatchEdit();
+        handleKey(primaryCode, keyCodes);
+        mEditor.endBatchEdit();
+    }
+
+    private void handleKey(int primaryCode, int[] keyCodes) {
         if (isWordSeparator(primaryCode)) {
             // Handle separator
+            String word = null;
             if (mComposing.length() > 0) {
-                commitTyped(getCurrentInputConnection());
+                word = commitTyped();
             }
             sendKey(primaryCode);
+            continuePhrase(word, primaryCode);
             updateShiftKeyState(getCurrentInputEditorInfo());
         } else if (primaryCode == Keyboard.KEYCODE_DELETE) {
             handleBackspace();
@@ -955,7 +931,7 @@ public class PersianInputMethodService extends InputMethodService
             if (current == mSymbolsKeyboard || current == mSymbolsShiftedKeyboard) {
                 current = mStandardKeyboard;
             } else {
-                current = mSymbolsKeyboard;
+                current = getSymbolsKeyboard();
             }
             mInputView.setKeyboard(current);
             if (current == mStandardKeyboard || current == mSymbolsKeyboard) {
@@ -967,14 +943,13 @@ public class PersianInputMethodService extends InputMethodService
     }
 
     public void onText(CharSequence text) {
-        InputConnection ic = getCurrentInputConnection();
-        if (ic == null) return;
-        ic.beginBatchEdit();
+        if (!mEditor.isConnected()) return;
+        mEditor.beginBatchEdit();
         if (mComposing.length() > 0) {
-            commitTyped(ic);
+            commitTyped();
         }
-        ic.commitText(text, 0);
-        ic.endBatchEdit();
+        mEditor.commitText(text, 0);
+        mEditor.endBatchEdit();
         updateShiftKeyState(getCurrentInputEditorInfo());
     }
 
@@ -985,34 +960,74 @@ public class PersianInputMethodService extends InputMethodService
      */
     private void updateCandidates() {
         mBestGuess = null;
+        mPhraseCandidatesStart = 0;
+        mPhraseCandidatesEnd = 0;
         if (!mCompletionOn) {
-            if (mComposing.length() > 0) {
-                mCandidateList.clear();
+            if (mPinglish.length() > 0) {
+                mCandidates.beginFill();
+
+                // Suggest the Persian words for the Latin letters, and
+                // the letters themselves last.
+                ArrayList<String> words = mPinglishWords;
+                if( words.size() > 0 ) {
+                    mBestGuess = words.get(0);
+                }
+                for( String persianWord : words ) {
+                    mCandidates.add(persianWord);
+                }
+                mCandidates.add(mPinglish.getLatin());
+                setSuggestions(mCandidates.publish(), true, words.size() > 0);
+
+            } else if (mComposing.length() > 0) {
+                mCandidates.beginFill();
 
                 // Add the current composed string to the suggestions, and
                 // determine if it is in the word list.
-                mCandidateList.add(mComposing.toString());
-                boolean isInWordList = false;
+                String composing = mComposing.toString();
+                mCandidates.add(composing);
+                boolean isInWordList = mGuesser.isKnownWord(composing);
+
+                // Add the phrases which the word continues.
+                mPhraseCandidatesStart = 1;
+                mPhraseCandidatesEnd = 1;
+                if( (mPhrase != null) && mPhrase.setComposing(composing) ) {
+                    for( String phrase : mPhrase.getPhrases(MAX_PHRASE_CANDIDATES) ) {
+                        mCandidates.add(phrase);
+                        mPhraseCandidatesEnd++;
+                    }
+                }
 
                 // Add other candidates.
-                ArrayList<String> guessList = mGuesser.guess(mComposing.toString());
+                ArrayList<String> guessList = mGuesser.guess(composing);
                 if( guessList.size() > 0 ) {
                     mBestGuess = guessList.get(0);
                 }
                 for( String persianWord : guessList ) {
-                    if( persianWord.equals(mComposing.toString()) ) {
-                        isInWordList = true;
-                    } else{
-                        mCandidateList.add(persianWord);
+                    if( !persianWord.equals(composing) ) {
+                        mCandidates.add(persianWord);
                     }
                 }
 
-                // Send the candidates to CandidateView for display.
-                setSuggestions(mCandidateList, true, isInWordList);
+                // Swap in the new candidates and send them to CandidateView for display.
+                setSuggestions(mCandidates.publish(), true, isInWordList);
+
+                // While waiting for the next key, get ready for it.
+                mPrefetcher.schedule(mComposing.toString());
+
+            } else if (mPhrase != null && mPhrase.setComposing("")) {
+                // Suggest how the phrase may continue.
+                mCandidates.beginFill();
+                for( String phrase : mPhrase.getPhrases(MAX_PHRASE_CANDIDATES) ) {
+                    mCandidates.add(phrase);
+                    mPhraseCandidatesEnd++;
+                }
+                setSuggestions(mCandidates.publish(), true, true);
+                mPrefetcher.cancel();
 
             } else {
                 // No suggestions.
                 setSuggestions(null, false, false);
+                mPrefetcher.cancel();
             }
         }
     }
@@ -1030,17 +1045,28 @@ public class PersianInputMethodService extends InputMethodService
     }
 
     private void handleBackspace() {
+        if (mPinglish.length() > 0) {
+            mPinglish.removeLast();
+            composePinglish();
+            return;
+        }
         final int length = mComposing.length();
+        mComposingRestored = false;
         if (length > 1) {
             mComposing.delete(length - 1, length);
-            getCurrentInputConnection().setComposingText(mComposing, 1);
+            mEditor.setComposingText(mComposing, 1);
             updateCandidates();
         } else if (length > 0) {
             mComposing.setLength(0);
-            getCurrentInputConnection().commitText("", 0);
+            mEditor.commitText("", 0);
             updateCandidates();
         } else {
             keyDownUp(KeyEvent.KEYCODE_DEL);
+            if (mPhrase != null) {
+                // The space after the phrase may have been deleted.
+                mPhrase = null;
+                updateCandidates();
+            }
         }
         updateShiftKeyState(getCurrentInputEditorInfo());
     }
@@ -1056,7 +1082,7 @@ public class PersianInputMethodService extends InputMethodService
 
         } else if (currentKeyboard == mSymbolsKeyboard) {
             mSymbolsKeyboard.setShifted(true);
-            mInputView.setKeyboard(mSymbolsShiftedKeyboard);
+            mInputView.setKeyboard(getSymbolsShiftedKeyboard());
             mSymbolsShiftedKeyboard.setShifted(true);
 
         } else if (currentKeyboard == mSymbolsShiftedKeyboard) {
@@ -1074,28 +1100,25 @@ public class PersianInputMethodService extends InputMethodService
         }
         if (isAlphabet(primaryCode) && mPredictionOn) {
             mComposing.append((char) primaryCode);
-            getCurrentInputConnection().setComposingText(mComposing, 1);
+            mComposingRestored = false;
+            mEditor.setComposingText(mComposing, 1);
             updateShiftKeyState(getCurrentInputEditorInfo());
             updateCandidates();
         } else {
-            getCurrentInputConnection().commitText(
+            mEditor.commitText(
                     String.valueOf((char) primaryCode), 1);
         }
     }
 
     private void handleClose() {
-        commitTyped(getCurrentInputConnection());
+        mIgnoreNextMove = true;
+        commitTyped();
         requestHideSelf(0);
         mInputView.closing();
     }
 
-    private String getWordSeparators() {
-        return mWordSeparators;
-    }
-
     public boolean isWordSeparator(int code) {
-        String separators = getWordSeparators();
-        return separators.contains(String.valueOf((char)code));
+        return PersianCharClass.isWordSeparator(code);
     }
 
     public void pickDefaultCandidate() {
@@ -1103,21 +1126,37 @@ public class PersianInputMethodService extends InputMethodService
     }
 
     public void pickSuggestionManually(int index) {
+        mEditor.beginBatchEdit();
+        pickSuggestion(index);
+        mEditor.endBatchEdit();
+    }
+
+    private void pickSuggestion(int index) {
         if (mCompletionOn && mCompletions != null && index >= 0
                 && index < mCompletions.length) {
             CompletionInfo ci = mCompletions[index];
-            getCurrentInputConnection().commitCompletion(ci);
+            mEditor.commitCompletion(ci);
             if (mCandidateView != null) {
                 mCandidateView.clear();
             }
             updateShiftKeyState(getCurrentInputEditorInfo());
-        } else if (mComposing.length() > 0) {
+        } else if (mComposing.length() > 0 || mPhrase != null) {
             // Increase the rank of the selected word.
-            mGuesser.selectWord(mCandidateList.get(index));
+            String word = mCandidates.front().get(index);
+            if (mPinglish.length() == 0 || !word.equals(mPinglish.getLatin())) {
+                // The Latin letters typed in Pinglish mode are not a word.
+                mGuesser.selectWord(word);
+            }
+
+            // A phrase from the cursor already has its first words in the text.
+            if (mPhrase != null && index >= mPhraseCandidatesStart && index < mPhraseCandidatesEnd) {
+                word = word.substring(mPhrase.getPhrase().length());
+            }
 
             // User has selected one of the suggestions, so commit it.
-            mComposing = new StringBuilder(mCandidateList.get(index) + " ");
-            commitTyped(getCurrentInputConnection(), true);
+            mComposing = new StringBuilder(word + " ");
+            commitTyped(true);
+            continuePhrase(word, ' ');
         }
     }
 
@@ -18,6 +18,8 @@
 
 package com.example.android.inputmethod.persian;
 
+import java.util.List;
+
 import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.XmlResourceParser;
@@ -28,13 +30,32 @@ public class PersianKeyboard extends Keyboard {
 
     private Key mEnterKey;
 
+    // Incremented whenever a key's label or icon is changed after layout, so
+    // that views caching a rendering of this keyboard know to redraw it.
+    private int mLabelGeneration;
+
+    // The keyboard is divided into a fixed grid of cells, and each cell lists
+    // the keys close enough to matter for a touch anywhere inside it, nearest
+    // to the centre of the cell first.
+    private static final int GRID_WIDTH = 20;
+    private static final int GRID_HEIGHT = 8;
+    // Same search radius that Keyboard uses, in multiples of the key width.
+    private static final float SEARCH_DISTANCE = 1.8f;
+    private static final int[] EMPTY_INTS = new int[0];
+
+    private int mCellWidth;
+    private int mCellHeight;
+    private int[][] mCellKeys;
+
     public PersianKeyboard(Context context, int xmlLayoutResId) {
         super(context, xmlLayoutResId);
+        computeProximityGrid();
     }
 
     public PersianKeyboard(Context context, int layoutTemplateResId,
             CharSequence characters, int columns, int horizontalPadding) {
         super(context, layoutTemplateResId, characters, columns, horizontalPadding);
+        computeProximityGrid();
     }
 
     @Override
@@ -55,6 +76,7 @@ public class PersianKeyboard extends Keyboard {
         if (mEnterKey == null) {
             return;
         }
+        mLabelGeneration++;
 
         switch (options&(EditorInfo.IME_MASK_ACTION|EditorInfo.IME_FLAG_NO_ENTER_ACTION)) {
             case EditorInfo.IME_ACTION_GO:
@@ -85,6 +107,104 @@ public class PersianKeyboard extends Keyboard {
         }
     }
 
+    int getLabelGeneration() {
+        return mLabelGeneration;
+    }
+
+    /**
+     * Build the proximity grid.  This has to be done after the keys have been
+     * laid out, i.e., at the end of construction.
+     */
+    private void computeProximityGrid() {
+        final List<Key> keys = getKeys();
+        final int keyCount = keys.size();
+        final int threshold = (int) (getKeyWidth() * SEARCH_DISTANCE);
+        final int squaredThreshold = threshold * threshold;
+
+        mCellWidth = (getMinWidth() + GRID_WIDTH - 1) / GRID_WIDTH;
+        mCellHeight = (getHeight() + GRID_HEIGHT - 1) / GRID_HEIGHT;
+        if (mCellWidth <= 0 || mCellHeight <= 0) {
+            mCellWidth = mCellHeight = 0;
+            return;
+        }
+        mCellKeys = new int[GRID_WIDTH * GRID_HEIGHT][];
+
+        final int[] indices = new int[keyCount];
+        final int[] distances = new int[keyCount];
+        for (int cell = 0; cell < GRID_WIDTH * GRID_HEIGHT; cell++) {
+            final int left = (cell % GRID_WIDTH) * mCellWidth;
+            final int top = (cell / GRID_WIDTH) * mCellHeight;
+            final int centreX = left + mCellWidth / 2;
+            final int centreY = top + mCellHeight / 2;
+
+            // Collect every key that some point of this cell is close to,
+            // keeping the list sorted by distance from the cell's centre.
+            int count = 0;
+            for (int i = 0; i < keyCount; i++) {
+                final Key key = keys.get(i);
+                if (squaredDistance(key, left, top, left + mCellWidth, top + mCellHeight)
+                        >= squaredThreshold) {
+                    continue;
+                }
+                final int distance = squaredDistance(key, centreX, centreY, centreX, centreY);
+                int j = count++;
+                while (j > 0 && distances[j - 1] > distance) {
+                    indices[j] = indices[j - 1];
+                    distances[j] = distances[j - 1];
+                    j--;
+                }
+                indices[j] = i;
+                distances[j] = distance;
+            }
+
+            mCellKeys[cell] = new int[count];
+            System.arraycopy(indices, 0, mCellKeys[cell], 0, count);
+        }
+    }
+
+    /**
+     * Squared distance between a key and the rectangle (left, top)-(right, bottom),
+     * or 0 if they overlap.
+     */
+    private static int squaredDistance(Key key, int left, int top, int right, int bottom) {
+        int dx = 0;
+        if (right < key.x) {
+            dx = key.x - right;
+        } else if (left > key.x + key.width) {
+            dx = left - (key.x + key.width);
+        }
+        int dy = 0;
+        if (bottom < key.y) {
+            dy = key.y - bottom;
+        } else if (top > key.y + key.height) {
+            dy = top - (key.y + key.height);
+        }
+        return dx * dx + dy * dy;
+    }
+
+    private int getCellIndex(int x, int y) {
+        if (mCellKeys == null || x < 0 || y < 0) {
+            return -1;
+        }
+        final int column = x / mCellWidth;
+        final int row = y / mCellHeight;
+        if (column >= GRID_WIDTH || row >= GRID_HEIGHT) {
+            return -1;
+        }
+        return row * GRID_WIDTH + column;
+    }
+
+    /**
+     * Returns the indices of the keys near the given point, nearest first.
+     * KeyboardView uses this to resolve touches, so it only has to test a
+     * handful of keys rather than scanning them all.
+     */
+    @Override
+    public int[] getNearestKeys(int x, int y) {
+        final int cell = getCellIndex(x, y);
+        return cell < 0 ? EMPTY_INTS : mCellKeys[cell];
+    }
+
     static class PersianKey extends Keyboard.Key {
 
         public PersianKey(Resources res, Keyboard.Row parent, int x, int y, XmlResourceParser parser) {
@@ -18,7 +18,17 @@
 
 package com.example.android.inputmethod.persian;
 
+import java.util.List;
+
 import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
 import android.inputmethodservice.Keyboard;
 import android.inputmethodservice.KeyboardView;
 import android.inputmethodservice.Keyboard.Key;
@@ -28,12 +38,83 @@ public class PersianKeyboardView extends KeyboardView {
 
     static final int KEYCODE_OPTIONS = -100;
 
+    // A pre-rendered image of the keyboard being shown, in its current shift
+    // state, with no keys pressed.  Shaping the Arabic labels is expensive,
+    // so it is done once here rather than on every invalidate.  Only the one
+    // bitmap is kept, and it is redrawn when the keyboard, its shift state or
+    // a label changes.
+    private Bitmap mAtlas;
+    private Keyboard mAtlasKeyboard;
+    private boolean mAtlasShifted;
+    private int mAtlasLabelGeneration;
+
+    // Whether KeyboardView is showing a mini keyboard, over which the rest of
+    // the keys are dimmed.  KeyboardView keeps this to itself, but it opens
+    // the mini keyboard from onLongPress, and calls invalidateAllKeys each
+    // time it opens or closes one.
+    private boolean mMiniKeyboardOnScreen;
+    private final int mBackgroundDimColor;
+
+    private Drawable mKeyBackground;
+    private final Rect mKeyPadding = new Rect(0, 0, 0, 0);
+    private final Paint mPaint = new Paint();
+    private int mKeyTextSize;
+    private int mLabelTextSize;
+
     public PersianKeyboardView(Context context, AttributeSet attrs) {
-        super(context, attrs);
+        this(context, attrs, android.R.attr.keyboardViewStyle);
     }
 
     public PersianKeyboardView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
+
+        // Pick up the same key style that KeyboardView itself would use.
+        mKeyBackground = getStyledDrawable(context, attrs, defStyle, android.R.attr.keyBackground);
+        mKeyTextSize = getStyledDimension(context, attrs, defStyle, android.R.attr.keyTextSize, 18);
+        mLabelTextSize = getStyledDimension(context, attrs, defStyle, android.R.attr.labelTextSize, 14);
+        int keyTextColor = getStyledColor(context, attrs, defStyle, android.R.attr.keyTextColor, 0xFF000000);
+        int shadowColor = getStyledColor(context, attrs, defStyle, android.R.attr.shadowColor, 0);
+        float shadowRadius = getStyledFloat(context, attrs, defStyle, android.R.attr.shadowRadius, 0f);
+        float backgroundDimAmount = getStyledFloat(context, null, 0, android.R.attr.backgroundDimAmount, 0.5f);
+        mBackgroundDimColor = (int) (backgroundDimAmount * 0xFF) << 24;
+
+        mPaint.setAntiAlias(true);
+        mPaint.setTextAlign(Paint.Align.CENTER);
+        mPaint.setColor(keyTextColor);
+        if (shadowRadius > 0) {
+            mPaint.setShadowLayer(shadowRadius, 0, 0, shadowColor);
+        }
+        if (mKeyBackground != null) {
+            mKeyBackground.getPadding(mKeyPadding);
+        }
+    }
+
+    private static Drawable getStyledDrawable(Context context, AttributeSet attrs, int defStyle, int attr) {
+        TypedArray a = context.obtainStyledAttributes(attrs, new int[] { attr }, defStyle, 0);
+        Drawable value = a.getDrawable(0);
+        a.recycle();
+        return value;
+    }
+
+    private static int getStyledDimension(Context context, AttributeSet attrs, int defStyle, int attr, int defValue) {
+        TypedArray a = context.obtainStyledAttributes(attrs, new int[] { attr }, defStyle, 0);
+        int value = a.getDimensionPixelSize(0, defValue);
+        a.recycle();
+        return value;
+    }
+
+    private static float getStyledFloat(Context context, AttributeSet attrs, int defStyle, int attr, float defValue) {
+        TypedArray a = context.obtainStyledAttributes(attrs, new int[] { attr }, defStyle, 0);
+        float value = a.getFloat(0, defValue);
+        a.recycle();
+        return value;
+    }
+
+    private static int getStyledColor(Context context, AttributeSet attrs, int defStyle, int attr, int defValue) {
+        TypedArray a = context.obtainStyledAttributes(attrs, new int[] { attr }, defStyle, 0);
+        int value = a.getColor(0, defValue);
+        a.recycle();
+        return value;
     }
 
     @Override
@@ -42,13 +123,174 @@ public class PersianKeyboardView extends KeyboardView {
             getOnKeyboardActionListener().onKey(KEYCODE_OPTIONS, null);
             return true;
         } else {
-            return super.onLongPress(key);
+            // KeyboardView's own invalidateAllKeys for the mini keyboard
+            // comes before this is set.
+            final boolean isMiniKeyboardShown = super.onLongPress(key);
+            if (isMiniKeyboardShown) {
+                mMiniKeyboardOnScreen = true;
+                invalidate();
+            }
+            return isMiniKeyboardShown;
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        releaseAtlas();
+    }
+
+    /**
+     * KeyboardView calls this whenever the keyboard or its shift state
+     * changes, or a mini keyboard closes, and would then redraw every key
+     * into its own buffer.  onDraw blits from the atlas instead, so only a
+     * repaint is needed.
+     */
+    @Override
+    public void invalidateAllKeys() {
+        mMiniKeyboardOnScreen = false;
+        if (mKeyBackground == null) {
+            super.invalidateAllKeys();
+        } else {
+            invalidate();
+        }
+    }
+
+    /**
+     * KeyboardView calls this when a key is pressed or released, and would
+     * then draw the key into its own full-size buffer, which onDraw never
+     * shows.  Repaint just the key instead, so that the buffer is never
+     * allocated.
+     */
+    @Override
+    public void invalidateKey(int keyIndex) {
+        Keyboard keyboard = getKeyboard();
+        if (mKeyBackground == null || keyboard == null) {
+            super.invalidateKey(keyIndex);
+            return;
+        }
+        final List<Key> keys = keyboard.getKeys();
+        if (keyIndex < 0 || keyIndex >= keys.size()) {
+            return;
         }
+        Key key = keys.get(keyIndex);
+        final int x = key.x + getPaddingLeft();
+        final int y = key.y + getPaddingTop();
+        invalidate(x, y, x + key.width, y + key.height);
     }
 
-    /* @Override
+    /**
+     * Drop the pre-rendered keyboard.  It is rebuilt on the next draw.
+     */
+    public void releaseAtlas() {
+        if (mAtlas != null) {
+            mAtlas.recycle();
+            mAtlas = null;
+        }
+        mAtlasKeyboard = null;
+    }
+
+    /**
+     * Draw the keyboard by blitting its pre-rendered image, and then drawing
+     * only the keys that are currently pressed on top of it, and the dimming
+     * under a mini keyboard.
+     */
+    @Override
     public void onDraw(Canvas canvas) {
-    	super.onDraw(canvas);
-    }*/
+        Keyboard keyboard = getKeyboard();
+        if (keyboard == null || mKeyBackground == null || getWidth() == 0 || getHeight() == 0) {
+            super.onDraw(canvas);
+            return;
+        }
+
+        canvas.drawBitmap(getAtlasBitmap(keyboard), 0, 0, null);
+
+        final List<Key> keys = keyboard.getKeys();
+        final int keyCount = keys.size();
+        for (int i = 0; i < keyCount; i++) {
+            Key key = keys.get(i);
+            if (key.pressed) {
+                drawKey(canvas, key);
+            }
+        }
+
+        if (mMiniKeyboardOnScreen) {
+            canvas.drawColor(mBackgroundDimColor);
+        }
+    }
+
+    private Bitmap getAtlasBitmap(Keyboard keyboard) {
+        int labelGeneration = 0;
+        if (keyboard instanceof PersianKeyboard) {
+            labelGeneration = ((PersianKeyboard) keyboard).getLabelGeneration();
+        }
+        final boolean shifted = keyboard.isShifted();
+
+        if (mAtlas == null) {
+            mAtlas = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+            mAtlasKeyboard = null;
+        }
+        if (keyboard != mAtlasKeyboard || shifted != mAtlasShifted
+                || labelGeneration != mAtlasLabelGeneration) {
+            mAtlas.eraseColor(Color.TRANSPARENT);
+            Canvas atlasCanvas = new Canvas(mAtlas);
+            for (Key key : keyboard.getKeys()) {
+                // Render every key in its released state.
+                boolean pressed = key.pressed;
+                key.pressed = false;
+                drawKey(atlasCanvas, key);
+                key.pressed = pressed;
+            }
+            mAtlasKeyboard = keyboard;
+            mAtlasShifted = shifted;
+            mAtlasLabelGeneration = labelGeneration;
+        }
+        return mAtlas;
+    }
+
+    /**
+     * Draw a single key the same way that KeyboardView does.
+     */
+    private void drawKey(Canvas canvas, Key key) {
+        final Rect padding = mKeyPadding;
+        final int x = key.x + getPaddingLeft();
+        final int y = key.y + getPaddingTop();
+
+        mKeyBackground.setState(key.getCurrentDrawableState());
+        final Rect bounds = mKeyBackground.getBounds();
+        if (key.width != bounds.right || key.height != bounds.bottom) {
+            mKeyBackground.setBounds(0, 0, key.width, key.height);
+        }
+
+        canvas.translate(x, y);
+        mKeyBackground.draw(canvas);
+
+        if (key.label != null) {
+            final String label = key.label.toString();
+            if (label.length() > 1 && key.codes.length < 2) {
+                mPaint.setTextSize(mLabelTextSize);
+                mPaint.setTypeface(Typeface.DEFAULT_BOLD);
+            } else {
+                mPaint.setTextSize(mKeyTextSize);
+                mPaint.setTypeface(Typeface.DEFAULT);
+            }
+            canvas.drawText(label,
+                    (key.width - padding.left - padding.right) / 2 + padding.left,
+                    (key.height - padding.top - padding.bottom) / 2
+                            + (mPaint.getTextSize() - mPaint.descent()) / 2 + padding.top,
+                    mPaint);
+        } else if (key.icon != null) {
+            final int drawableX = (key.width - padding.left - padding.right
+                    - key.icon.getIntrinsicWidth()) / 2 + padding.left;
+            final int drawableY = (key.height - padding.top - padding.bottom
+                    - key.icon.getIntrinsicHeight()) / 2 + padding.top;
+            canvas.translate(drawableX, drawableY);
+            key.icon.setBounds(0, 0, key.icon.getIntrinsicWidth(), key.icon.getIntrinsicHeight());
+            key.icon.draw(canvas);
+            canvas.translate(-drawableX, -drawableY);
+        }
+
+        canvas.translate(-x, -y);
+    }
 
 }
@@ -25,6 +25,7 @@ import android.preference.PreferenceActivity;
 
 public class Preferences extends PreferenceActivity implements OnSharedPreferenceChangeListener {
     public static final String KEY_SELECT_SUGGESTION_CHECKBOX_PREFERENCE = "select_suggestion_checkbox_preference";
+    public static final String KEY_PINGLISH_CHECKBOX_PREFERENCE = "pinglish_checkbox_preference";
     public static final String KEY_GROUP_VARIANTS_CHECKBOX_PREFERENCE = "group_variants_checkbox_preference";
     public static final String KEY_USE_REDUCED_KEYS_CHECKBOX_PREFERENCE = "use_reduced_keys_checkbox_preference";
     public static final String KEY_PREFER_FULLSCREEN_CHECKBOX_PREFERENCE = "prefer_fullscreen_checkbox_preference";
@@ -56,6 +57,7 @@ public class Preferences extends PreferenceActivity implements OnSharedPreferenc
 
     public void onSharedPreferenceChanged(final SharedPreferences sharedPrefs, final String key) {
         if (key.equals(KEY_SELECT_SUGGESTION_CHECKBOX_PREFERENCE)) {
+        } else if (key.equals(KEY_PINGLISH_CHECKBOX_PREFERENCE)) {
         } else if (key.equals(KEY_GROUP_VARIANTS_CHECKBOX_PREFERENCE)) {
         } else if (key.equals(KEY_USE_REDUCED_KEYS_CHECKBOX_PREFERENCE)) {
         } else if (key.equals(KEY_PREFER_FULLSCREEN_CHECKBOX_PREFERENCE)) {
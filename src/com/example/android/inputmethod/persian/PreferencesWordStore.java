@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import android.content.SharedPreferences;
+
+/**
+ * Keeps the words the user has selected in the shared preferences, as one
+ * string with a newline after each word.
+ */
+class PreferencesWordStore implements SelectedWordStore {
+
+    private static final String KEY_SELECTED_WORDS = "selected-words";
+
+    private final SharedPreferences mSharedPrefs;
+
+    PreferencesWordStore(SharedPreferences sharedPrefs) {
+        mSharedPrefs = sharedPrefs;
+    }
+
+    public List<String> load() {
+        String selectedWordsBundle = mSharedPrefs.getString(KEY_SELECTED_WORDS, null);
+        if (selectedWordsBundle == null || selectedWordsBundle.length() == 0) {
+            return new ArrayList<String>();
+        }
+        return Arrays.asList(selectedWordsBundle.split("\\n"));
+    }
+
+    public void save(List<String> words) {
+        // Concatenate the selected words into one string, delimited by newlines.
+        StringBuilder selectedWordsBuilder = new StringBuilder();
+        for (String word : words) {
+            selectedWordsBuilder.append(word);
+            selectedWordsBuilder.append('\n');
+        }
+
+        SharedPreferences.Editor sharedPrefsEd = mSharedPrefs.edit();
+        sharedPrefsEd.putString(KEY_SELECTED_WORDS, selectedWordsBuilder.toString());
+        sharedPrefsEd.commit();
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.content.res.Resources;
+
+/**
+ * Reads the dictionary from a raw resource.
+ */
+class ResourceWordListSource implements WordListSource {
+
+    private final Resources mResources;
+    private final int mId;
+
+    ResourceWordListSource(Resources resources, int id) {
+        mResources = resources;
+        mId = id;
+    }
+
+    public InputStream open() throws IOException {
+        return mResources.openRawResource(mId);
+    }
+}
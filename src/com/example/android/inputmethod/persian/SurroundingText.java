@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+/**
+ * A local copy of the committed text on either side of the cursor (or of the
+ * composing region, if there is one).  It is kept up to date from our own
+ * edits, so that looking at the context of the word being typed does not
+ * need a round-trip to the editor.  When the editor reports something we did
+ * not expect, the copy is marked invalid and must be resynced.
+ */
+class SurroundingText {
+    // How much text to ask for when resyncing, and how much to keep.
+    static final int WINDOW = 64;
+    private static final int MAX_LENGTH = 2 * WINDOW;
+
+    private final StringBuilder mBefore = new StringBuilder();
+    private final StringBuilder mAfter = new StringBuilder();
+    // Whether mBefore reaches the start of the text, and mAfter the end.
+    private boolean mBeforeComplete;
+    private boolean mAfterComplete;
+    private boolean mValid;
+
+    boolean isValid() {
+        return mValid;
+    }
+
+    void invalidate() {
+        mValid = false;
+        mBefore.setLength(0);
+        mAfter.setLength(0);
+    }
+
+    /**
+     * Replace the copy with text fetched from the editor.
+     */
+    void resync(CharSequence before, CharSequence after) {
+        mBefore.setLength(0);
+        mAfter.setLength(0);
+        if (before != null) {
+            mBefore.append(before);
+        }
+        if (after != null) {
+            mAfter.append(after);
+        }
+        mBeforeComplete = mBefore.length() < WINDOW;
+        mAfterComplete = mAfter.length() < WINDOW;
+        mValid = before != null && after != null;
+    }
+
+    /**
+     * Text was committed at the cursor, and the cursor then placed at
+     * cursorOffset relative to the start of the committed text.  Returns
+     * where the cursor really is relative to the start of the text, which is
+     * cursorOffset unless the editor has clamped it to the end of the text.
+     */
+    int onCommit(CharSequence text, int cursorOffset) {
+        if (!mValid) {
+            return cursorOffset;
+        }
+        mBefore.append(text);
+        final int offset = text.length() + moveCursor(cursorOffset - text.length());
+        if (mBefore.length() > MAX_LENGTH) {
+            mBefore.delete(0, mBefore.length() - WINDOW);
+            mBeforeComplete = false;
+        }
+        return offset;
+    }
+
+    /**
+     * Characters before the cursor were deleted.
+     */
+    void onDeleteBefore(int length) {
+        if (!mValid) {
+            return;
+        }
+        if (mBefore.length() >= length) {
+            mBefore.setLength(mBefore.length() - length);
+        } else if (mBeforeComplete) {
+            mBefore.setLength(0);
+        } else {
+            // We do not know what was deleted.
+            invalidate();
+        }
+    }
+
+    /**
+     * Move the cursor by delta characters, if the text it moves over is known.
+     * Returns how far the cursor really moved.
+     */
+    private int moveCursor(int delta) {
+        if (delta < 0) {
+            if (-delta > mBefore.length()) {
+                invalidate();
+                return delta;
+            }
+            mAfter.insert(0, mBefore, mBefore.length() + delta, mBefore.length());
+            mBefore.setLength(mBefore.length() + delta);
+        } else if (delta > 0) {
+            if (delta > mAfter.length()) {
+                if (mAfterComplete) {
+                    // The editor clamps the cursor to the end of the text.
+                    delta = mAfter.length();
+                } else {
+                    invalidate();
+                    return delta;
+                }
+            }
+            mBefore.append(mAfter, 0, delta);
+            mAfter.delete(0, delta);
+        }
+        return delta;
+    }
+
+    /**
+     * The length of the word that ends at the cursor, i.e., the trailing
+     * characters of the text before the cursor which are not separators.
+     */
+    int getWordLengthBefore() {
+        int i = mBefore.length();
+        while (i > 0 && !PersianCharClass.isWordSeparator(mBefore.charAt(i - 1))) {
+            i--;
+        }
+        return mBefore.length() - i;
+    }
+
+    /**
+     * The word that ends at the cursor, or null if there is none or we cannot
+     * see all of it.
+     */
+    String getWordBefore() {
+        final int length = getWordLengthBefore();
+        if (length == 0 || (length == mBefore.length() && !mBeforeComplete)) {
+            return null;
+        }
+        return mBefore.substring(mBefore.length() - length);
+    }
+
+    /**
+     * The length of the word that starts at the cursor.
+     */
+    int getWordLengthAfter() {
+        int i = 0;
+        while (i < mAfter.length() && !PersianCharClass.isWordSeparator(mAfter.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * Author: David Yonge-Mallo
+ */
+
+package com.example.android.inputmethod.persian;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.inputmethodservice.InputMethodService;
+import android.view.inputmethod.BaseInputConnection;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputConnection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class EditorConnectionTest {
+    private static final String WORD = "\u0633\u0644\u0627\u0645"; // salaam
+
+    private FakeEditor mEditor;
+    private EditorConnection mConnection;
+
+    @Before
+    public void setUp() {
+        mEditor = new FakeEditor();
+        mConnection = new EditorConnection(new InputMethodService() {
+            @Override
+            public InputConnection getCurrentInputConnection() {
+                return mEditor;
+            }
+        });
+        EditorInfo attribute = new EditorInfo();
+        attribute.initialSelStart = 0;
+        attribute.initialSelEnd = 0;
+        mConnection.onStartInput(attribute);
+    }
+
+    @Test
+    public void typingAWordAndSpaceAtTheEndIsNotAMove() {
+        type(WORD);
+        // As the service commits a typed word and then the space after it.
+        mConnection.beginBatchEdit();
+        mConnection.commitText(WORD, 1);
+        mConnection.commitText(" ", 1);
+        mConnection.endBatchEdit();
+        assertFalse(reportSelection());
+        assertEquals(WORD + " ", mEditor.mText.toString());
+
+        type(WORD);
+        assertFalse(reportSelection());
+    }
+
+    @Test
+    public void pickingACandidateIsNotAMove() {
+        // A picked candidate replaces the composing text, with a space.
+        type(WORD.substring(0, 2));
+        mConnection.commitText(WORD + " ", 1);
+        assertFalse(reportSelection());
+        assertEquals(WORD + " ", mEditor.mText.toString());
+
+        // The rest of a phrase is picked with nothing being composed.
+        mConnection.commitText(WORD + " ", 1);
+        assertFalse(reportSelection());
+        assertEquals(WORD + " " + WORD + " ", mEditor.mText.toString());
+    }
+
+    @Test
+    public void cursorPastTheEndIsClampedWhenTheTextIsKnown() {
+        assertTrue(mConnection.getSurroundingText().isValid());
+        type(WORD);
+        mConnection.commitText(WORD, WORD.length());
+        assertEquals(WORD.length(), mEditor.mCursor);
+        assertFalse(reportSelection());
+    }
+
+    @Test
+    public void movingTheCursorIsAMove() {
+        type(WORD);
+        mConnection.commitText(WORD, 1);
+        assertFalse(reportSelection());
+        mEditor.mCursor = 1;
+        assertTrue(reportSelection());
+    }
+
+    // Type the word one letter at a time, as composing text.
+    private void type(String word) {
+        for (int i = 1; i <= word.length(); i++) {
+            mConnection.setComposingText(word.substring(0, i), 1);
+            assertFalse(reportSelection());
+        }
+    }
+
+    // Tell the connection where the editor's selection now is.
+    private boolean reportSelection() {
+        return mConnection.onUpdateSelection(mEditor.mCursor, mEditor.mCursor,
+                mEditor.mComposingStart, mEditor.mComposingEnd);
+    }
+
+    /**
+     * An editor holding plain text, which places the cursor as the framework
+     * documents, clamped to the text.
+     */
+    private static class FakeEditor extends BaseInputConnection {
+        final StringBuilder mText = new StringBuilder();
+        int mCursor;
+        int mComposingStart = -1;
+        int mComposingEnd = -1;
+
+        FakeEditor() {
+            super(null, true);
+        }
+
+        @Override
+        public CharSequence getTextBeforeCursor(int length, int flags) {
+            return mText.substring(Math.max(0, mCursor - length), mCursor);
+        }
+
+        @Override
+        public CharSequence getTextAfterCursor(int length, int flags) {
+            return mText.substring(mCursor, Math.min(mText.length(), mCursor + length));
+        }
+
+        @Override
+        public boolean setComposingText(CharSequence text, int newCursorPosition) {
+            final int start = replaceComposing(text, newCursorPosition);
+            mComposingStart = text.length() > 0 ? start : -1;
+            mComposingEnd = text.length() > 0 ? start + text.length() : -1;
+            return true;
+        }
+
+        @Override
+        public boolean commitText(CharSequence text, int newCursorPosition) {
+            replaceComposing(text, newCursorPosition);
+            mComposingStart = -1;
+            mComposingEnd = -1;
+            return true;
+        }
+
+        @Override
+        public boolean finishComposingText() {
+            mComposingStart = -1;
+            mComposingEnd = -1;
+            return true;
+        }
+
+        @Override
+        public boolean deleteSurroundingText(int beforeLength, int afterLength) {
+            final int start = Math.max(0, mCursor - beforeLength);
+            mText.delete(mCursor, Math.min(mText.length(), mCursor + afterLength));
+            mText.delete(start, mCursor);
+            mCursor = start;
+            return true;
+        }
+
+        @Override
+        public boolean beginBatchEdit() {
+            return true;
+        }
+
+        @Override
+        public boolean endBatchEdit() {
+            return true;
+        }
+
+        // Replace the composing region, or insert at the cursor, and place
+        // the cursor.  Returns where the text starts.
+        private int replaceComposing(CharSequence text, int newCursorPosition) {
+            int start = mCursor;
+            int end = mCursor;
+            if (mComposingStart >= 0) {
+                start = mComposingStart;
+                end = mComposingEnd;
+            }
+            mText.replace(start, end, text.toString());
+            final int cursor = newCursorPosition > 0
+                    ? start + text.length() + newCursorPosition - 1 : start + newCursorPosition;
+            mCursor = Math.max(0, Math.min(mText.length(), cursor));
+            return start;
+        }
+    }
+}